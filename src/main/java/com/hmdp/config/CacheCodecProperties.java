@@ -0,0 +1,31 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 缓存编码配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache.codec")
+public class CacheCodecProperties {
+    /**
+     * 默认编码器
+     */
+    private String defaultCodec = "jackson";
+
+    /**
+     * key前缀 -> 编码器，前缀中含有冒号，在 yaml 中需要写成 "[cache:shop:]"
+     */
+    private Map<String, String> prefixes = new HashMap<>();
+
+    /**
+     * 编码后超过该字节数的值使用 LZ4 压缩，小于等于 0 表示不压缩
+     */
+    private int compressThreshold = 1024;
+}
@@ -1,13 +1,17 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.AdminInterceptor;
 import com.hmdp.utils.LoginInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.annotation.Resource;
+import java.util.HashSet;
+import java.util.List;
 
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
@@ -15,6 +19,10 @@ public class MvcConfig implements WebMvcConfigurer {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    // 可以访问运维接口的用户id
+    @Value("${hmdp.admin.user-ids:}")
+    private List<Long> adminUserIds;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         // 登录拦截器
@@ -28,6 +36,15 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/user/code",
                         "/user/login"
                 ).order(1);
+        // 运维接口和修改店铺计数、评分、店铺类型的接口只允许管理员访问，/shop/** 和 /shop-type/** 整体不需要登录，这里单独拦截
+        registry.addInterceptor(new AdminInterceptor(new HashSet<>(adminUserIds)))
+                .addPathPatterns(
+                        "/cache/**",
+                        "/voucher-order/consumers",
+                        "/shop-type",
+                        "/shop/*/counter",
+                        "/shop/*/score"
+                ).order(2);
         // token刷新的拦截器
         registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
     }
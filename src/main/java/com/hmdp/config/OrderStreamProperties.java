@@ -0,0 +1,49 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 秒杀订单消息队列的消费配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.order.stream")
+public class OrderStreamProperties {
+    /**
+     * 每个实例的消费者数量，运行中可以通过接口调整
+     */
+    private int concurrency = 2;
+
+    /**
+     * 每次 XREADGROUP 最多读取的消息数
+     */
+    private int batchSize = 10;
+
+    /**
+     * 没有消息时阻塞等待的毫秒数
+     */
+    private long blockMillis = 2000L;
+
+    /**
+     * 检查 pending 消息的间隔毫秒数
+     */
+    private long recoverIntervalMillis = 10000L;
+
+    /**
+     * 消息投递后超过这个毫秒数仍未确认，视为消费者已经宕机或处理失败，由其它消费者认领；
+     * 每多投递一次，等待时间翻倍
+     */
+    private long claimIdleMillis = 30000L;
+
+    /**
+     * 最多投递次数，超过后转入死信队列
+     */
+    private int maxDeliveries = 5;
+
+    /**
+     * 分页检查 pending 列表时每页的消息数
+     */
+    private int recoverBatchSize = 100;
+}
@@ -0,0 +1,46 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheBloomFilter;
+import com.hmdp.utils.LocalCache;
+import com.hmdp.utils.ShopFilterIndex;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.ShopTypeSnapshot;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SHOP_COUNTER_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SHOP_TYPE_VERSION_CHANNEL;
+
+@Configuration
+public class RedisListenerConfig {
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       LocalCache localCache, ShopGeoIndex shopGeoIndex,
+                                                                       ShopNameIndex shopNameIndex, ShopFilterIndex shopFilterIndex,
+                                                                       ShopTypeSnapshot shopTypeSnapshot,
+                                                                       CacheBloomFilter cacheBloomFilter) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        // 订阅缓存失效通知，清除本节点的本地缓存
+        container.addMessageListener(localCache, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        // 新增数据时把id加入本节点的布隆过滤器
+        container.addMessageListener(cacheBloomFilter, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        // 店铺资料变化（shop:change:<id>）时同步更新本节点的坐标索引
+        container.addMessageListener(shopGeoIndex, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        // 同步更新本节点的店铺名称索引
+        container.addMessageListener(shopNameIndex, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        // 同步更新本节点的店铺筛选索引，包括优惠券列表的失效
+        container.addMessageListener(shopFilterIndex, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        // 销量、评价数、评分变化时直接修改本节点索引中的排序值
+        container.addMessageListener(shopFilterIndex, new ChannelTopic(SHOP_COUNTER_CHANNEL));
+        container.addMessageListener(shopNameIndex, new ChannelTopic(SHOP_COUNTER_CHANNEL));
+        // 店铺类型版本变化时重新加载本节点的快照
+        container.addMessageListener(shopTypeSnapshot, new ChannelTopic(SHOP_TYPE_VERSION_CHANNEL));
+        return container;
+    }
+}
@@ -6,11 +6,15 @@ import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.service.IBlogService;
+import com.hmdp.utils.ResponseCache;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -27,6 +31,9 @@ public class BlogController {
     @Resource
     private IBlogService blogService;
 
+    @Resource
+    private ResponseCache responseCache;
+
     @PostMapping
     public Result saveBlog(@RequestBody Blog blog) {
         return blogService.saveBlog(blog);
@@ -55,8 +62,13 @@ public class BlogController {
     }
 
     @GetMapping("/{id}")
-    public Result queryBlogById(@PathVariable("id") Long id) {
-        return blogService.queryBlogById(id);
+    public void queryBlogById(@PathVariable("id") Long id,
+                              HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Result result = blogService.queryBlogById(id);
+        Blog blog = result.getData() instanceof Blog ? (Blog) result.getData() : null;
+        // 是否点赞与当前用户有关，点赞数、作者信息的变化由内容摘要区分
+        responseCache.write(request, response, "blog", id, result,
+                blog == null ? null : blog.getUpdateTime(), blog == null ? null : String.valueOf(blog.getIsLike()));
     }
 
     @GetMapping("/likes/{id}")
@@ -0,0 +1,123 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.ICacheOutboxService;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.CacheWarmUp;
+import com.hmdp.utils.CircuitBreakerRegistry;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.ShopGeoStore;
+import com.hmdp.utils.ShopRankStore;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+/**
+ * <p>
+ * 缓存运维接口
+ * </p>
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Resource
+    private CacheWarmUp cacheWarmUp;
+
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+
+    @Resource
+    private ShopGeoStore shopGeoStore;
+
+    @Resource
+    private ShopRankStore shopRankStore;
+
+    /**
+     * 从数据库全量重建 Redis 中的店铺坐标，写入影子key后原子替换
+     * @return 店铺数、key数、耗时、速度
+     */
+    @PostMapping("/geo/shop/rebuild")
+    public Result rebuildShopGeo() {
+        Map<String, Object> stats = shopGeoStore.rebuild();
+        if (stats == null) {
+            return Result.fail("店铺坐标正在重建中");
+        }
+        return Result.ok(stats);
+    }
+
+    /**
+     * 从数据库全量重建 Redis 中的店铺排行榜，写入影子key后原子替换
+     * @return 店铺数、key数、耗时、速度
+     */
+    @PostMapping("/rank/shop/rebuild")
+    public Result rebuildShopRank() {
+        Map<String, Object> stats = shopRankStore.rebuild();
+        if (stats == null) {
+            return Result.fail("店铺排行榜正在重建中");
+        }
+        return Result.ok(stats);
+    }
+
+    /**
+     * 查询缓存失效发件箱的投递状态
+     * @return 待投递数、最久未投递的延迟、成功/失败次数
+     */
+    @GetMapping("/outbox")
+    public Result queryOutbox() {
+        return Result.ok(cacheOutboxService.getStats());
+    }
+
+    /**
+     * 查询启动预热进度
+     * @return 阶段、已加载店铺数、耗时、速度
+     */
+    @GetMapping("/warm-up")
+    public Result queryWarmUp() {
+        return Result.ok(cacheWarmUp.getProgress());
+    }
+
+    /**
+     * 查询各个缓存前缀的数据库熔断器状态
+     * @return 熔断器名称、状态、成功/失败/拒绝次数
+     */
+    @GetMapping("/breakers")
+    public Result queryBreakers() {
+        return Result.ok(circuitBreakerRegistry.getAll());
+    }
+
+    /**
+     * 查询当前的热点key
+     * @return 热点key及估算的访问次数，按访问次数降序
+     */
+    @GetMapping("/hot-keys")
+    public Result queryHotKeys() {
+        return Result.ok(hotKeyDetector.getHotKeys());
+    }
+
+    /**
+     * 在线重建店铺id布隆过滤器
+     * @return 是否重建成功，已有重建任务时返回失败
+     */
+    @PostMapping("/bloom/shop/rebuild")
+    public Result rebuildShopBloomFilter() {
+        if (!shopService.rebuildBloomFilter()) {
+            return Result.fail("布隆过滤器正在重建中");
+        }
+        return Result.ok();
+    }
+}
@@ -1,15 +1,17 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopFilterDTO;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.ResponseCache;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 /**
  * <p>
@@ -26,15 +28,30 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private ResponseCache responseCache;
+
     /**
      * 根据id查询商铺信息
+     * 按 update_time 返回 ETag、Last-Modified，没有变化时返回 304
      * @param id 商铺id
-     * @return 商铺详情数据
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
+    public void queryShopById(@PathVariable("id") Long id,
+                              HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Result result = shopService.queryById(id);
+        Shop shop = result.getData() instanceof Shop ? (Shop) result.getData() : null;
+        responseCache.write(request, response, "shop", id, result, shop == null ? null : shop.getUpdateTime(), null);
+    }
 
-        return shopService.queryById(id);
+    /**
+     * 查询商铺详情页的全部数据：商铺信息、优惠券（含实时库存）、点赞最多的笔记，并行查询
+     * @param id 商铺id
+     * @return 商铺详情，超时的部分为空并记录在 missing 中
+     */
+    @GetMapping("/{id}/detail")
+    public Result queryShopDetail(@PathVariable("id") Long id) {
+        return shopService.queryDetail(id);
     }
 
     /**
@@ -45,9 +62,7 @@ public class ShopController {
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
         // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -61,10 +76,39 @@ public class ShopController {
         return shopService.updata(shop);
     }
 
+    /**
+     * 修改商铺的计数字段，只允许管理员调用
+     * @param id 商铺id
+     * @param field 计数字段，sold 或 comments
+     * @param delta 增量
+     * @return 无
+     */
+    @PutMapping("/{id}/counter")
+    public Result incrementCounter(
+            @PathVariable("id") Long id,
+            @RequestParam("field") String field,
+            @RequestParam(value = "delta", defaultValue = "1") Integer delta
+    ) {
+        return shopService.incrementCounter(id, field, delta);
+    }
+
+    /**
+     * 修改商铺评分，只允许管理员调用
+     * @param id 商铺id
+     * @param score 评分，1~5分乘10
+     * @return 无
+     */
+    @PutMapping("/{id}/score")
+    public Result updateScore(@PathVariable("id") Long id, @RequestParam("score") Integer score) {
+        return shopService.updateScore(id, score);
+    }
+
     /**
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
      * @param current 页码
+     * @param sort 排行方式，sold、score、comments 或 avgPrice，指定时不再按坐标查询
+     * @param cursor 按坐标或排行查询时的游标，第一页传空字符串，传入游标时返回下一页的游标，不再使用页码
      * @return 商铺列表
      */
     @GetMapping("/of/type")
@@ -72,27 +116,38 @@ public class ShopController {
             @RequestParam("typeId") Integer typeId,
             @RequestParam(value = "current", defaultValue = "1") Integer current,
             @RequestParam(value = "x", required = false) Double x,
-            @RequestParam(value = "y", required = false) Double y
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "cursor", required = false) String cursor
     ) {
-       return shopService.queryShopByType(typeId, current, x, y);
+       return shopService.queryShopByType(typeId, current, x, y, sort, cursor);
+    }
+
+    /**
+     * 按类型、商圈、人均价格档位、星级、是否有优惠券筛选商铺
+     * @param filter 筛选条件、排序方式、坐标和页码
+     * @return 商铺列表
+     */
+    @GetMapping("/filter")
+    public Result filterShops(ShopFilterDTO filter) {
+        return shopService.filterShops(filter);
     }
 
     /**
      * 根据商铺名称关键字分页查询商铺信息
-     * @param name 商铺名称关键字
+     * @param name 商铺名称关键字，同时匹配商圈
      * @param current 页码
+     * @param sort 匹配程度相同时的排序字段，score 或 sold
+     * @param cursor 游标，第一页传空字符串，传入游标时返回下一页的游标，不再使用页码
      * @return 商铺列表
      */
     @GetMapping("/of/name")
     public Result queryShopByName(
             @RequestParam(value = "name", required = false) String name,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "sort", defaultValue = "score") String sort,
+            @RequestParam(value = "cursor", required = false) String cursor
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByName(name, current, sort, cursor);
     }
 }
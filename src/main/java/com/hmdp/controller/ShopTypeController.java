@@ -4,12 +4,15 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.service.IShopTypeService;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import com.hmdp.utils.ShopTypeSnapshot;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
-import java.util.List;
 
 /**
  * <p>
@@ -25,14 +28,69 @@ public class ShopTypeController {
     @Resource
     private IShopTypeService typeService;
 
+    @Resource
+    private ShopTypeSnapshot shopTypeSnapshot;
+
     /**
-     * 展示店铺种类
-     * @return
+     * 展示店铺种类，直接返回本地快照中序列化好的响应体；If-None-Match 与 ETag 相同时返回 304
+     * @param ifNoneMatch 客户端缓存的 ETag
+     * @return 按 sort 排序的类型列表
      */
     @GetMapping("list")
-    public Result queryTypeList() {
-//       List<ShopType> typeList = typeService
-//               .query().orderByAsc("sort").list();
-        return typeService.show();
+    public ResponseEntity<byte[]> queryTypeList(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ShopTypeSnapshot.Snapshot snapshot = shopTypeSnapshot.get();
+        // 客户端每次都要校验，类型变化后马上能看到
+        CacheControl cacheControl = CacheControl.noCache();
+        if (matches(ifNoneMatch, snapshot.getEtag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(snapshot.getEtag())
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(snapshot.getEtag())
+                .cacheControl(cacheControl)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.getBody());
+    }
+
+    /**
+     * If-None-Match 可能是逗号分隔的多个 ETag，也可能是 *
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if ("*".equals(tag) || etag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 新增店铺种类
+     * @param shopType 类型数据
+     * @return 类型id
+     */
+    @PostMapping
+    public Result saveType(@RequestBody ShopType shopType) {
+        return typeService.saveShopType(shopType);
+    }
+
+    /**
+     * 更新店铺种类
+     * @param shopType 类型数据
+     * @return 无
+     */
+    @PutMapping
+    public Result updateType(@RequestBody ShopType shopType) {
+        return typeService.updateShopType(shopType);
     }
 }
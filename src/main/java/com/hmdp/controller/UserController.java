@@ -74,7 +74,7 @@ public class UserController {
      @GetMapping("/info/{id}")
     public Result info(@PathVariable("id") Long userId){
         // 查询详情
-        UserInfo info = userInfoService.getById(userId);
+        UserInfo info = userInfoService.queryByUserId(userId);
         if (info == null) {
             // 没有详情，应该是第一次查看详情
             return Result.ok();
@@ -4,9 +4,15 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.ResponseCache;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * <p>
@@ -23,6 +29,9 @@ public class VoucherController {
     @Resource
     private IVoucherService voucherService;
 
+    @Resource
+    private ResponseCache responseCache;
+
     /**
      * 新增普通券
      * @param voucher 优惠券信息
@@ -30,7 +39,7 @@ public class VoucherController {
      */
     @PostMapping
     public Result addVoucher(@RequestBody Voucher voucher) {
-        voucherService.save(voucher);
+        voucherService.addVoucher(voucher);
         return Result.ok(voucher.getId());
     }
 
@@ -47,11 +56,33 @@ public class VoucherController {
 
     /**
      * 查询店铺的优惠券列表
+     * 版本为优惠券和秒杀信息中最新的 update_time，没有变化时返回 304
      * @param shopId 店铺id
-     * @return 优惠券列表
      */
     @GetMapping("/list/{shopId}")
-    public Result queryVoucherOfShop(@PathVariable("shopId") Long shopId) {
-       return voucherService.queryVoucherOfShop(shopId);
+    public void queryVoucherOfShop(@PathVariable("shopId") Long shopId,
+                                   HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Result result = voucherService.queryVoucherOfShop(shopId);
+        responseCache.write(request, response, "voucher-list", shopId, result, latestUpdateTime(result), null);
+    }
+
+    /**
+     * 空列表的版本固定为 1970-01-01
+     */
+    @SuppressWarnings("unchecked")
+    private static LocalDateTime latestUpdateTime(Result result) {
+        if (!(result.getData() instanceof List)) {
+            return null;
+        }
+        LocalDateTime latest = LocalDateTime.of(1970, 1, 1, 0, 0);
+        for (Voucher voucher : (List<Voucher>) result.getData()) {
+            if (voucher.getUpdateTime() == null) {
+                return null;
+            }
+            if (voucher.getUpdateTime().isAfter(latest)) {
+                latest = voucher.getUpdateTime();
+            }
+        }
+        return latest;
     }
 }
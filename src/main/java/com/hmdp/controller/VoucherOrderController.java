@@ -3,10 +3,8 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import com.hmdp.utils.OrderStreamConsumers;
+import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
 
@@ -24,9 +22,34 @@ public class VoucherOrderController {
     @Resource
     private IVoucherOrderService voucherOrderService;
 
+    @Resource
+    private OrderStreamConsumers orderStreamConsumers;
+
     @PostMapping("seckill/{id}")
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return voucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 查询本实例各个订单消费者处理的消息数
+     * @return 消费者名称、成功/失败数、批次数、平均每批耗时
+     */
+    @GetMapping("consumers")
+    public Result queryConsumers() {
+        return Result.ok(orderStreamConsumers.getStats());
+    }
+
+    /**
+     * 调整本实例的订单消费者数量，只允许管理员调用
+     * @param concurrency 消费者数量
+     * @return 调整后的数量
+     */
+    @PutMapping("consumers")
+    public Result updateConsumers(@RequestParam("concurrency") Integer concurrency) {
+        if (concurrency < 0 || concurrency > 64) {
+            return Result.fail("消费者数量必须在0~64之间");
+        }
+        return Result.ok(orderStreamConsumers.setConcurrency(concurrency));
+    }
 }
 
@@ -0,0 +1,23 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 店铺详情页的聚合数据
+ */
+@Data
+public class ShopDetailDTO {
+    private Shop shop;
+    private List<Voucher> vouchers;
+    private List<Blog> blogs;
+    /**
+     * 超时或失败的部分：shop、vouchers、blogs，对应字段为空
+     */
+    private List<String> missing = new ArrayList<>();
+}
@@ -0,0 +1,38 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+/**
+ * 店铺多条件筛选，条件为空表示不限
+ */
+@Data
+@Accessors(chain = true)
+public class ShopFilterDTO {
+    private Long typeId;
+    /**
+     * 商圈
+     */
+    private String area;
+    /**
+     * 人均价格档位，见 ShopBitmapIndex.PRICE_BANDS，多个档位之间是或的关系
+     */
+    private List<Integer> priceBands;
+    /**
+     * 最低星级，1~5，评分除以10向下取整
+     */
+    private Integer minStar;
+    /**
+     * 是否有上架中的优惠券
+     */
+    private Boolean hasVoucher;
+    /**
+     * 排序方式：sold、score、comments、avgPrice；为空时传入坐标则按距离排序，否则按店铺id
+     */
+    private String sort;
+    private Double x;
+    private Double y;
+    private Integer current = 1;
+}
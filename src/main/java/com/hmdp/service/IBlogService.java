@@ -26,4 +26,6 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryBlogOfFollow(Long max, Integer offset);
 
+    Result queryTopBlogOfShop(Long shopId);
+
 }
\ No newline at end of file
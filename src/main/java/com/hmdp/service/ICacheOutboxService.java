@@ -0,0 +1,28 @@
+package com.hmdp.service;
+
+import com.hmdp.entity.CacheOutbox;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.Map;
+
+/**
+ * <p>
+ *  服务类
+ * </p>
+ */
+public interface ICacheOutboxService extends IService<CacheOutbox> {
+
+    /**
+     * 在当前事务中记录一条缓存失效，事务提交后由投递线程删除 Redis 缓存并广播清除本地缓存
+     *
+     * @param key 完整的key
+     */
+    void record(String key);
+
+    /**
+     * 查询投递状态
+     *
+     * @return 待投递数、最久未投递的延迟、成功/失败次数
+     */
+    Map<String, Object> getStats();
+}
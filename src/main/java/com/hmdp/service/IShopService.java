@@ -1,6 +1,7 @@
 package com.hmdp.service;
 
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopFilterDTO;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -16,7 +17,21 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    Result queryDetail(Long id);
+
+    Result saveShop(Shop shop);
+
+    boolean rebuildBloomFilter();
+
     Result updata(Shop shop);
 
-    Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+    Result incrementCounter(Long id, String field, Integer delta);
+
+    Result updateScore(Long id, Integer score);
+
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y, String sort, String cursor);
+
+    Result queryShopByName(String name, Integer current, String sort, String cursor);
+
+    Result filterShops(ShopFilterDTO filter);
 }
@@ -15,4 +15,8 @@ import com.baomidou.mybatisplus.extension.service.IService;
 public interface IShopTypeService extends IService<ShopType> {
 
     Result show();
+
+    Result saveShopType(ShopType shopType);
+
+    Result updateShopType(ShopType shopType);
 }
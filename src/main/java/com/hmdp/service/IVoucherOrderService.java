@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -17,4 +19,14 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
     Result seckillVoucher(Long voucherId);
 
     Result creatVoucherOrder(VoucherOrder voucherId);
+
+    void handleVoucherOrder(VoucherOrder voucherOrder);
+
+    /**
+     * 批量创建订单：一条多行 INSERT，每张券一次扣减库存，在同一个事务中完成
+     *
+     * @return 写入的订单数，已经存在的订单会被跳过
+     * @throws org.springframework.dao.DuplicateKeyException 其它消费者并发写入了同一用户同一张券的订单，整批回滚
+     */
+    int createVoucherOrders(List<VoucherOrder> voucherOrders);
 }
@@ -0,0 +1,174 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.mapper.CacheOutboxMapper;
+import com.hmdp.service.ICacheOutboxService;
+import com.hmdp.utils.LocalCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * <p>
+ * 缓存失效发件箱。
+ * 业务数据和失效记录在同一个事务中写入，事务提交后再删除缓存，避免提交前被并发读请求回填旧数据；
+ * 删除失败的记录保留在表中按指数退避重试，直到成功。
+ * 投递线程每批读取多条记录，在一个 pipeline 中删除 Redis 缓存并发布本地缓存失效通知。
+ * 多个节点可能同时投递同一批记录，删除缓存是幂等的，不影响正确性。
+ * </p>
+ */
+@Slf4j
+@Service
+public class CacheOutboxServiceImpl extends ServiceImpl<CacheOutboxMapper, CacheOutbox> implements ICacheOutboxService {
+    // 每批投递的记录数
+    private static final int BATCH_SIZE = 100;
+    // 兜底轮询间隔，正常情况下事务提交后会立即投递
+    private static final long POLL_INTERVAL_MILLIS = 1000L;
+    // 最大重试间隔
+    private static final long MAX_BACKOFF_SECONDS = 60L;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private LocalCache localCache;
+
+    private final ScheduledExecutorService relayExecutor =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("cache-outbox-relay-", true));
+    private final AtomicBoolean triggered = new AtomicBoolean();
+    private final AtomicLong relayedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    @PostConstruct
+    private void init() {
+        relayExecutor.scheduleWithFixedDelay(this::relay, POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        relayExecutor.shutdownNow();
+    }
+
+    @Override
+    public void record(String key) {
+        save(new CacheOutbox()
+                .setCacheKey(key)
+                .setRetryCount(0)
+                .setNextRetryTime(LocalDateTime.now()));
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            trigger();
+            return;
+        }
+        // 事务提交后立即投递，不用等下一次轮询
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                trigger();
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        CacheOutbox oldest = query().orderByAsc("id").last("LIMIT 1").one();
+        long lagMillis = oldest == null || oldest.getCreateTime() == null ? 0
+                : Duration.between(oldest.getCreateTime(), LocalDateTime.now()).toMillis();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", count());
+        stats.put("lagMillis", Math.max(lagMillis, 0));
+        stats.put("relayed", relayedCount.get());
+        stats.put("failed", failedCount.get());
+        return stats;
+    }
+
+    private void trigger() {
+        if (triggered.compareAndSet(false, true)) {
+            relayExecutor.execute(this::relay);
+        }
+    }
+
+    private void relay() {
+        triggered.set(false);
+        try {
+            // 一批满了说明可能还有积压，继续投递
+            int count;
+            do {
+                count = relayBatch();
+            } while (count == BATCH_SIZE);
+        } catch (Exception e) {
+            // 不能抛出，否则定时任务会被取消
+            log.error("缓存失效投递异常", e);
+        }
+    }
+
+    /**
+     * 投递一批到期的记录
+     *
+     * @return 本批记录数
+     */
+    private int relayBatch() {
+        // 1.查询到期的记录
+        List<CacheOutbox> rows = query()
+                .le("next_retry_time", LocalDateTime.now())
+                .orderByAsc("id")
+                .last("LIMIT " + BATCH_SIZE)
+                .list();
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = rows.stream().map(CacheOutbox::getId).collect(Collectors.toList());
+        // 同一批中重复的key只删除一次
+        Set<String> keys = rows.stream().map(CacheOutbox::getCacheKey).collect(Collectors.toCollection(LinkedHashSet::new));
+        // 2.删除 Redis 缓存并广播清除各节点的本地缓存
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                stringConnection.del(keys.toArray(new String[0]));
+                for (String key : keys) {
+                    stringConnection.publish(CACHE_INVALIDATE_CHANNEL, key);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // 3.失败，按每条记录自己的重试次数推迟下次投递时间，退避时间相同的记录一起更新
+            Map<Long, List<Long>> idsByBackoff = rows.stream().collect(Collectors.groupingBy(
+                    row -> Math.min(1L << Math.min(row.getRetryCount(), 6), MAX_BACKOFF_SECONDS),
+                    TreeMap::new, Collectors.mapping(CacheOutbox::getId, Collectors.toList())));
+            LocalDateTime now = LocalDateTime.now();
+            idsByBackoff.forEach((backoff, backoffIds) -> update().setSql("retry_count = retry_count + 1")
+                    .set("next_retry_time", now.plusSeconds(backoff))
+                    .in("id", backoffIds)
+                    .update());
+            failedCount.addAndGet(rows.size());
+            log.warn("缓存失效投递失败，{}秒后重试，数量：{}", idsByBackoff.keySet(), rows.size(), e);
+            return 0;
+        }
+        // 4.成功，删除记录
+        for (String key : keys) {
+            localCache.invalidateLocal(key);
+        }
+        removeByIds(ids);
+        relayedCount.addAndGet(rows.size());
+        return rows.size();
+    }
+}
@@ -1,26 +1,58 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.thread.NamedThreadFactory;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.CursorResult;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopDetailDTO;
+import com.hmdp.dto.ShopFilterDTO;
+import com.hmdp.entity.Blog;
 import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.ICacheOutboxService;
 import com.hmdp.service.IShopService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheBloomFilter;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.GeoGridIndex;
+import com.hmdp.utils.ShopBitmapIndex;
+import com.hmdp.utils.ShopFilterIndex;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopGeoStore;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.ShopRankStore;
 import com.hmdp.utils.SystemConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
 import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -32,21 +64,92 @@ import static com.hmdp.utils.RedisConstants.*;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
+    // 允许原地修改的计数字段，字段名会拼接到 SQL 中，必须是白名单
+    private static final Set<String> COUNTER_FIELDS = new HashSet<>(Arrays.asList("sold", "comments"));
+    // 附近店铺的查询半径，单位米
+    private static final double NEARBY_RADIUS = 5000;
+    // 店铺详情各部分的超时时间，从请求开始计算
+    private static final long DETAIL_SHOP_TIMEOUT_MILLIS = 500L;
+    private static final long DETAIL_VOUCHER_TIMEOUT_MILLIS = 300L;
+    private static final long DETAIL_BLOG_TIMEOUT_MILLIS = 300L;
+
+    private final ThreadPoolExecutor detailExecutor = new ThreadPoolExecutor(
+            8, 32, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(256),
+            new NamedThreadFactory("shop-detail-", true),
+            new ThreadPoolExecutor.AbortPolicy());
+
+    // 店铺详情使用 Hash 结构缓存，计数字段原地修改
+    @Value("${hmdp.cache.shop.hash-layout:false}")
+    private boolean hashLayout;
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private CacheBloomFilter cacheBloomFilter;
+
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    @Resource
+    private ShopGeoStore shopGeoStore;
+
+    @Resource
+    private ShopNameIndex shopNameIndex;
+
+    @Resource
+    private ShopRankStore shopRankStore;
+
+    @Resource
+    private ShopFilterIndex shopFilterIndex;
+
+    @Resource
+    private IVoucherService voucherService;
+
+    @Resource
+    private IBlogService blogService;
+
+    @PreDestroy
+    private void destroy() {
+        detailExecutor.shutdownNow();
+    }
+
+    /**
+     * 启动完成后构建店铺id的布隆过滤器
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initBloomFilter() {
+        try {
+            rebuildBloomFilter();
+        } catch (Exception e) {
+            log.error("构建店铺布隆过滤器失败", e);
+        }
+    }
+
+    @Override
+    public boolean rebuildBloomFilter() {
+        // JSON 和 Hash 两种缓存结构共用一个过滤器
+        return cacheBloomFilter.rebuild(CACHE_SHOP_KEY, getBaseMapper()::queryIdsAfter, CACHE_SHOP_HASH_KEY);
+    }
 
     @Override
     public Result queryById(Long id) {
         //缓存穿透
-        Shop shop = cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        //Shop shop = cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
         //缓存击穿（互斥锁）
-        //Shop shop =queryWithMutex(id);
+        Shop shop = hashLayout
+                ? cacheClient.queryHash(CACHE_SHOP_HASH_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES)
+                : cacheClient.queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
         //缓存击穿（逻辑过期）
         //Shop shop = cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
@@ -58,6 +161,46 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     }
 
 
+    @Override
+    public Result queryDetail(Long id) {
+        long begin = System.currentTimeMillis();
+        // 1.并行查询店铺、优惠券和笔记，各自走自己的缓存
+        CompletableFuture<Result> shopFuture = submitDetail(() -> queryById(id));
+        CompletableFuture<List<Voucher>> voucherFuture = submitDetail(() -> queryVoucherWithStock(id));
+        CompletableFuture<List<Blog>> blogFuture = submitDetail(
+                () -> listOf(blogService.queryTopBlogOfShop(id)));
+        // 2.按各自的超时时间等待，超时或失败的部分留空
+        ShopDetailDTO detail = new ShopDetailDTO();
+        Result shopResult = awaitDetail(shopFuture, begin + DETAIL_SHOP_TIMEOUT_MILLIS, "shop", detail);
+        if (shopResult != null && !Boolean.TRUE.equals(shopResult.getSuccess())) {
+            // 店铺不存在
+            voucherFuture.cancel(true);
+            blogFuture.cancel(true);
+            return shopResult;
+        }
+        detail.setShop(shopResult == null ? null : (Shop) shopResult.getData());
+        detail.setVouchers(awaitDetail(voucherFuture, begin + DETAIL_VOUCHER_TIMEOUT_MILLIS, "vouchers", detail));
+        detail.setBlogs(awaitDetail(blogFuture, begin + DETAIL_BLOG_TIMEOUT_MILLIS, "blogs", detail));
+        return Result.ok(detail);
+    }
+
+    @Override
+    public Result saveShop(Shop shop) {
+        // 1.写入数据库
+        save(shop);
+        // 2.加入本节点的布隆过滤器，其它节点收到下面的通知后加入
+        cacheBloomFilter.put(CACHE_SHOP_KEY, shop.getId());
+        // 3.清除可能存在的空值缓存，并通知各节点更新布隆过滤器和进程内索引
+        cacheOutboxService.record(CACHE_SHOP_KEY + shop.getId());
+        cacheOutboxService.record(SHOP_CHANGE_KEY + shop.getId());
+        // 4.写入 Redis 坐标
+        shopGeoStore.save(shop.getId(), null, shop.getTypeId(), shop.getX(), shop.getY());
+        // 5.写入排行榜
+        shopRankStore.save(shop, null);
+        // 6.返回店铺id
+        return Result.ok(shop.getId());
+    }
+
     @Override
     @Transactional
     public Result updata(Shop shop) {
@@ -65,15 +208,110 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if (id == null) {
             return Result.fail("店铺id不能为空");
         }
+        Shop old = getById(id);
+        if (old == null) {
+            return Result.fail("店铺不存在");
+        }
         //1.更新数据库
         updateById(shop);
-        //2.删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        //2.在同一个事务中记录缓存失效，提交后再删除缓存并广播清除各节点的本地缓存
+        cacheOutboxService.record(CACHE_SHOP_KEY + id);
+        cacheOutboxService.record(CACHE_SHOP_HASH_KEY + id);
+        cacheOutboxService.record(SHOP_CHANGE_KEY + id);
+        //3.提交后更新 Redis 坐标和排行榜，更换类型时从旧类型中删除
+        Shop merged = BeanUtil.copyProperties(old, Shop.class);
+        BeanUtil.copyProperties(shop, merged, CopyOptions.create().ignoreNullValue());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                shopGeoStore.save(id, old.getTypeId(), merged.getTypeId(), merged.getX(), merged.getY());
+                shopRankStore.save(merged, old.getTypeId());
+            }
+        });
+        return Result.ok();
+    }
+
+    @Override
+    public Result incrementCounter(Long id, String field, Integer delta) {
+        if (!COUNTER_FIELDS.contains(field)) {
+            return Result.fail("不支持的计数字段");
+        }
+        //1.更新数据库
+        boolean success = update()
+                .setSql(field + " = " + field + " + " + delta)
+                .eq("id", id)
+                .update();
+        if (!success) {
+            return Result.fail("店铺不存在");
+        }
+        //2.Hash 结构原地修改，JSON 结构只能删除缓存
+        if (hashLayout) {
+            cacheClient.incrementHashField(CACHE_SHOP_HASH_KEY + id, field, delta);
+            // 同时修改 updateTime，响应缓存以它作为版本号
+            cacheClient.setHashField(CACHE_SHOP_HASH_KEY + id, "updateTime", LocalDateTime.now());
+        } else {
+            cacheOutboxService.record(CACHE_SHOP_KEY + id);
+        }
+        //3.读回最新值写入排行榜，ZADD 覆盖，重复执行也不会多加
+        Shop latest = query().select("id", "type_id", field).eq("id", id).one();
+        shopRankStore.save(latest, null);
+        //4.通知各节点更新筛选和名称索引中的排序值
+        publishCounter(latest, field);
+        return Result.ok();
+    }
+
+    @Override
+    public Result updateScore(Long id, Integer score) {
+        if (score == null || score < 10 || score > 50) {
+            return Result.fail("评分必须在10~50之间");
+        }
+        //1.更新数据库
+        boolean success = update().set("score", score).eq("id", id).update();
+        if (!success) {
+            return Result.fail("店铺不存在");
+        }
+        //2.Hash 结构只修改这一个字段
+        if (hashLayout) {
+            cacheClient.setHashField(CACHE_SHOP_HASH_KEY + id, "score", score);
+            cacheClient.setHashField(CACHE_SHOP_HASH_KEY + id, "updateTime", LocalDateTime.now());
+        } else {
+            cacheOutboxService.record(CACHE_SHOP_KEY + id);
+        }
+        //3.更新排行榜
+        Shop latest = query().select("id", "type_id", "score").eq("id", id).one();
+        shopRankStore.save(latest, null);
+        //4.通知各节点更新筛选和名称索引中的星级和排序值
+        publishCounter(latest, "score");
         return Result.ok();
     }
 
+    private static boolean validPage(Integer current) {
+        return current != null && current >= 1 && current <= SystemConstants.MAX_PAGE;
+    }
+
+    private void publishCounter(Shop shop, String field) {
+        if (shop == null) {
+            return;
+        }
+        Number value = ShopRankStore.Dimension.of(field).valueOf(shop);
+        if (value != null) {
+            stringRedisTemplate.convertAndSend(SHOP_COUNTER_CHANNEL, shop.getId() + ":" + field + ":" + value);
+        }
+    }
+
      @Override
-    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y, String sort, String cursor) {
+        if (cursor == null && !validPage(current)) {
+            return Result.fail("页码超出范围，请使用游标分页");
+        }
+        // 0.指定排序时查询排行榜
+        if (StrUtil.isNotBlank(sort)) {
+            ShopRankStore.Dimension dimension = ShopRankStore.Dimension.of(sort);
+            if (dimension == null) {
+                return Result.fail("不支持的排序方式");
+            }
+            return queryRankedShops(typeId, current, dimension, cursor);
+        }
         // 1.判断是否需要根据坐标查询
         if (x == null || y == null) {
             // 不需要坐标查询，按数据库查询
@@ -83,6 +321,13 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             // 返回数据
             return Result.ok(page.getRecords());
         }
+        // 1.1.优先查询本地坐标索引，游标分页只能使用本地索引，索引加载期间让客户端重试
+        if (shopGeoIndex.isReady()) {
+            return queryNearbyShops(typeId, current, x, y, cursor);
+        }
+        if (cursor != null) {
+            return Result.fail("店铺坐标索引正在加载，请稍后再试");
+        }
 
         // 2.计算分页参数
         int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
@@ -94,7 +339,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
                 .search(
                         key,
                         GeoReference.fromCoordinate(x, y),
-                        new Distance(5000),
+                        new Distance(NEARBY_RADIUS),
                         RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(end)
                 );
         // 4.解析出id
@@ -117,9 +362,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             Distance distance = result.getDistance();
             distanceMap.put(shopIdStr, distance);
         });
-        // 5.根据id查询Shop
-        String idStr = StrUtil.join(",", ids);
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
+        // 5.根据id批量查询Shop，结果与距离顺序一致
+        List<Shop> shops = cacheClient.queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
         for (Shop shop : shops) {
             shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
         }
@@ -127,197 +371,246 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shops);
     }
 
-    //private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-
-//    /**
-//     * 逻辑过期解决缓存击穿问题
-//     * @param id
-//     * @return
-//     */
-//    public  Shop queryWithLogicalExpire(Long id){
-//        // 定义 Redis 键
-//        String key = CACHE_SHOP_KEY + id;
-//        //1.从redis查询商铺缓存
-//        String shopJson=stringRedisTemplate.opsForValue().get(CACHE_SHOP_KEY+id);
-//        //2判断是否存在
-//        if (StrUtil.isBlank(shopJson)){
-//            //3，存在直接返回
-//            return null;
-//        }
-//        //4命中需要把json反序列化为对象
-//        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-//        Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-//        LocalDateTime expireTime = redisData.getExpireTime();
-//        //5判断是否过期
-//        if (expireTime.isAfter(LocalDateTime.now())){
-//            //5.1未过期直接返回店铺信息
-//            return shop;
-//        }
-//        //5.2已过期需要缓存重建
-//
-//        //6缓存重建
-//
-//        //6.1获取互斥锁
-//        String lockKey = LOCK_SHOP_KEY+id;
-//        boolean isLock = trtLock(lockKey);
-//
-//        //6.2判断是否获取成功
-//        if (!isLock){
-//            //6.3成功开启独立线程，实现缓存重建
-//            CACHE_REBUILD_EXECUTOR.submit(() ->{
-//                try {
-//                    //重建缓存
-//                    this.saveShop2Redis(id,20L);
-//                } catch (Exception e) {
-//                    throw new RuntimeException(e);
-//                } finally {
-//                    //释放锁
-//                    unlock(lockKey);
-//                }
-//            });
-//        }
-//
-//
-//        //6.4返回过期店铺信息
-//
-//
-//
-//        return shop;
-//    }
-//
-//
-//    /**
-//     * 使用互斥锁解决缓存击穿问题，查询指定 ID 的商铺信息
-//     * 缓存击穿指的是热点 key 在缓存过期瞬间，大量请求同时涌入数据库。
-//     * 此方法通过互斥锁保证同一时间只有一个线程能进行缓存重建操作。
-//     * @param id 商铺的唯一标识
-//     * @return 商铺实体对象，如果未找到则返回 null
-//     */
-//    public  Shop queryWithMutex(Long id){
-//        // 定义 Redis 键
-//        String key = CACHE_SHOP_KEY + id;
-//        //1.从redis查询商铺缓存
-//        String shopJson=stringRedisTemplate.opsForValue().get(CACHE_SHOP_KEY+id);
-//        //2判断是否存在
-//        if (StrUtil.isNotBlank(shopJson)){
-//            //3，存在直接返回
-//            Shop shop=JSONUtil.toBean(shopJson,Shop.class);
-//            return shop;
-//        }
-//        //判断命中是否是空值
-//        if (shopJson !=null){
-//            //返回错误信息
-//            return null;
-//        }
-//        String lockKey= null;
-//        Shop shop = null;
-//        try {
-//            //4.实现缓存重建
-//            //4.1.获取互斥锁
-//            lockKey = "lock:shop"+id;
-//            boolean isLock=trtLock(lockKey);
-//            //4.2判断是否获取成功
-//            if(! isLock){
-//                //4.3失败则休眠且重试
-//                Thread.sleep(50);
-//                return  queryWithPassThrough(id);
-//            }
-//            //4.4成功根据id查询数据库
-//            shop = getById(id);
-//            //模拟重建的延时
-//            Thread.sleep(200);
-//            //5，不存在返回错误
-//            if(shop==null){
-//                //将空值写入 redis
-//                stringRedisTemplate.opsForValue().set(key,"",CACHE_NULL_TTL, TimeUnit.MINUTES);
-//                //返回错误信息
-//                return null;
-//            }
-//            //6.存在写入redis
-//            stringRedisTemplate.opsForValue().set(key,JSONUtil.toJsonStr(shop),CACHE_SHOP_TTL, TimeUnit.MINUTES);
-//        } catch (InterruptedException e) {
-//            throw new RuntimeException(e);
-//        }finally {
-//            //7释放互斥锁
-//            unlock(lockKey);
-//        }
-//        //8.返回
-//        return shop;
-//    }
-//
-//
-//     /**
-//     * 通过缓存穿透方案查询商铺信息
-//     * 该方法会先从 Redis 缓存中查询商铺信息，若缓存不存在则查询数据库，
-//     * 数据库查询结果为空时会将空值写入缓存，避免缓存穿透问题
-//     * @param id 商铺的唯一标识
-//     * @return 商铺实体对象，如果未找到则返回 null
-//     */
-//    public  Shop queryWithPassThrough(Long id){
-//        // 定义 Redis 键
-//        String key = CACHE_SHOP_KEY + id;
-//        //1.从redis查询商铺缓存
-//        String shopJson=stringRedisTemplate.opsForValue().get(CACHE_SHOP_KEY+id);
-//        //2判断是否存在
-//        if (StrUtil.isNotBlank(shopJson)){
-//            //3，存在直接返回
-//            Shop shop=JSONUtil.toBean(shopJson,Shop.class);
-//            return shop;
-//        }
-//        //判断命中是否是空值
-//        if (shopJson !=null){
-//            //返回错误信息
-//            return null;
-//        }
-//
-//        //4.不存在查询id数据库
-//        Shop shop =getById(id);
-//        //5，不存在返回错误
-//        if(shop==null){
-//            //将空值写入 redis
-//            stringRedisTemplate.opsForValue().set(key,"",CACHE_NULL_TTL, TimeUnit.MINUTES);
-//            //返回错误信息
-//            return null;
-//        }
-//        //6.存在写入redis
-//        stringRedisTemplate.opsForValue().set(key,JSONUtil.toJsonStr(shop),CACHE_SHOP_TTL, TimeUnit.MINUTES);
-//        //6.返回
-//        return shop;
-//    }
-//
-//
-//    /**获取互斥锁
-//     *
-//     * @param key
-//     * @return
-//     */
-//    private boolean trtLock(String key){
-//        Boolean flag=stringRedisTemplate.opsForValue().setIfAbsent(key,"1",10,TimeUnit.SECONDS);
-//        return BooleanUtil.isTrue(flag);
-//    }
-//
-//    /**
-//     * 释放互斥锁
-//     * @param key
-//     */
-//    private  void unlock(String key){
-//        stringRedisTemplate.delete(key);
-//    }
-//
-//
-//    /**
-//     * 将指定 ID 的店铺信息保存到 Redis 中，并设置逻辑过期时间
-//     * @param id 店铺的唯一标识，用于从数据库中查询对应的店铺信息
-//     * @param expireSeconds 逻辑过期时间的秒数，用于设置店铺信息在 Redis 中的逻辑过期时间
-//     */
-//    public void  saveShop2Redis(long id,Long expireSeconds){
-//        //查询店铺数据
-//        Shop shop =getById(id);
-//        //封装逻辑过期时间
-//        RedisData redisData =new RedisData();
-//        redisData.setData(shop);
-//        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-//        //写入redis
-//        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY+id,JSONUtil.toJsonStr(redisData));
-//    }
+    /**
+     * 通过排行榜查询店铺。
+     * 游标中保存上一页最后一个排序值和这个值已经返回的数量，与关注推送的滚动分页相同；没有游标时按页码分页
+     */
+    private Result queryRankedShops(Integer typeId, Integer current, ShopRankStore.Dimension dimension, String cursor) {
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        // 1.查询排行榜
+        Set<ZSetOperations.TypedTuple<String>> tuples;
+        Double last = null;
+        int offset = 0;
+        if (cursor == null) {
+            tuples = shopRankStore.range(typeId.longValue(), dimension, (long) (current - 1) * size, size);
+        } else {
+            if (StrUtil.isNotEmpty(cursor)) {
+                // 游标格式：排序值:偏移量
+                try {
+                    String[] parts = Base64.decodeStr(cursor).split(":");
+                    last = Double.parseDouble(parts[0]);
+                    offset = Integer.parseInt(parts[1]);
+                } catch (RuntimeException e) {
+                    return Result.fail("无效的游标");
+                }
+            }
+            tuples = shopRankStore.scroll(typeId.longValue(), dimension, last, offset, size);
+        }
+        if (tuples == null) {
+            tuples = Collections.emptySet();
+        }
+        // 2.解析出id，以及最后一个排序值和它在本页出现的次数
+        List<Long> ids = new ArrayList<>(tuples.size());
+        double minScore = 0;
+        int os = 0;
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            ids.add(Long.valueOf(tuple.getValue()));
+            double score = tuple.getScore();
+            if (os > 0 && score == minScore) {
+                os++;
+            } else {
+                minScore = score;
+                os = 1;
+            }
+        }
+        // 3.根据id批量查询Shop，结果与排行顺序一致
+        List<Shop> shops = cacheClient.queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        if (cursor == null) {
+            return Result.ok(shops);
+        }
+        // 4.返回下一页的游标，本页的排序值都与上一页最后一个相同时偏移量要累加
+        String next = null;
+        if (ids.size() == size) {
+            if (last != null && minScore == last) {
+                os += offset;
+            }
+            next = Base64.encodeUrlSafe(minScore + ":" + os);
+        }
+        return Result.ok(new CursorResult(shops, next));
+    }
+
+    /**
+     * 通过本地坐标索引查询附近的店铺。
+     * 游标中保存上一页最后一个店铺的距离和id，每页只需要扫描游标附近的格子；没有游标时按页码分页
+     */
+    private Result queryNearbyShops(Integer typeId, Integer current, double x, double y, String cursor) {
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        // 1.查询距离最近的店铺id
+        List<GeoGridIndex.Hit> hits;
+        if (cursor == null) {
+            int from = (current - 1) * size;
+            hits = shopGeoIndex.nearest(typeId.longValue(), x, y, NEARBY_RADIUS, -1, 0, from + size);
+            hits = hits.size() <= from ? Collections.emptyList() : hits.subList(from, hits.size());
+        } else {
+            double afterDistance = -1;
+            long afterId = 0;
+            if (StrUtil.isNotEmpty(cursor)) {
+                // 游标格式：距离:店铺id
+                try {
+                    String[] parts = Base64.decodeStr(cursor).split(":");
+                    afterDistance = Double.parseDouble(parts[0]);
+                    afterId = Long.parseLong(parts[1]);
+                } catch (RuntimeException e) {
+                    return Result.fail("无效的游标");
+                }
+            }
+            hits = shopGeoIndex.nearest(typeId.longValue(), x, y, NEARBY_RADIUS, afterDistance, afterId, size);
+        }
+        // 2.根据id批量查询Shop，结果与距离顺序一致
+        List<Long> ids = hits.stream().map(GeoGridIndex.Hit::getId).collect(Collectors.toList());
+        Map<Long, Double> distanceMap = hits.stream()
+                .collect(Collectors.toMap(GeoGridIndex.Hit::getId, GeoGridIndex.Hit::getDistance));
+        List<Shop> shops = cacheClient.queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        for (Shop shop : shops) {
+            shop.setDistance(distanceMap.get(shop.getId()));
+        }
+        if (cursor == null) {
+            return Result.ok(shops);
+        }
+        // 3.返回下一页的游标
+        String next = null;
+        if (hits.size() == size) {
+            GeoGridIndex.Hit last = hits.get(hits.size() - 1);
+            next = Base64.encodeUrlSafe(last.getDistance() + ":" + last.getId());
+        }
+        return Result.ok(new CursorResult(shops, next));
+    }
+
+    @Override
+    public Result queryShopByName(String name, Integer current, String sort, String cursor) {
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        if (cursor == null && !validPage(current)) {
+            return Result.fail("页码超出范围，请使用游标分页");
+        }
+        // 1.没有关键字或本地索引还没有加载完成时查询数据库，游标分页只能使用本地索引
+        if (StrUtil.isBlank(name) || (cursor == null && !shopNameIndex.isReady())) {
+            Page<Shop> page = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .page(new Page<>(current, size));
+            return Result.ok(page.getRecords());
+        }
+        if (!shopNameIndex.isReady()) {
+            return Result.fail("店铺名称索引正在加载，请稍后再试");
+        }
+        // 2.查询名称索引
+        List<ShopNameIndex.Hit> hits;
+        if (cursor == null) {
+            int from = (current - 1) * size;
+            hits = shopNameIndex.search(name, sort, null, from + size);
+            hits = hits.size() <= from ? Collections.emptyList() : hits.subList(from, hits.size());
+        } else {
+            ShopNameIndex.Hit after = null;
+            if (StrUtil.isNotEmpty(cursor)) {
+                // 游标格式：匹配程度:排序值:店铺id
+                try {
+                    String[] parts = Base64.decodeStr(cursor).split(":");
+                    after = new ShopNameIndex.Hit(Long.parseLong(parts[2]),
+                            Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+                } catch (RuntimeException e) {
+                    return Result.fail("无效的游标");
+                }
+            }
+            hits = shopNameIndex.search(name, sort, after, size);
+        }
+        // 3.根据id批量查询Shop，结果与索引顺序一致
+        List<Long> ids = hits.stream().map(ShopNameIndex.Hit::getId).collect(Collectors.toList());
+        List<Shop> shops = cacheClient.queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        if (cursor == null) {
+            return Result.ok(shops);
+        }
+        // 4.返回下一页的游标
+        String next = null;
+        if (hits.size() == size) {
+            ShopNameIndex.Hit last = hits.get(hits.size() - 1);
+            next = Base64.encodeUrlSafe(last.getQuality() + ":" + last.getSortValue() + ":" + last.getId());
+        }
+        return Result.ok(new CursorResult(shops, next));
+    }
+
+    @Override
+    public Result filterShops(ShopFilterDTO filter) {
+        if (!shopFilterIndex.isReady()) {
+            return Result.fail("店铺筛选索引正在加载，请稍后再试");
+        }
+        // 1.对条件位图求交集并排序
+        List<ShopBitmapIndex.Hit> hits;
+        try {
+            hits = shopFilterIndex.query(filter, SystemConstants.DEFAULT_PAGE_SIZE);
+        } catch (IllegalArgumentException e) {
+            return Result.fail(e.getMessage());
+        }
+        // 2.根据id批量查询Shop，结果与筛选顺序一致
+        List<Long> ids = hits.stream().map(ShopBitmapIndex.Hit::getId).collect(Collectors.toList());
+        List<Shop> shops = cacheClient.queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        // 3.按距离排序时返回距离
+        if (filter.getSort() == null && filter.getX() != null && filter.getY() != null) {
+            Map<Long, Double> distanceMap = hits.stream()
+                    .collect(Collectors.toMap(ShopBitmapIndex.Hit::getId, ShopBitmapIndex.Hit::getKey));
+            for (Shop shop : shops) {
+                shop.setDistance(distanceMap.get(shop.getId()));
+            }
+        }
+        return Result.ok(shops);
+    }
+
+    /**
+     * 查询店铺上架中的优惠券，列表缓存中的秒杀库存可能是旧的，以 Redis 中的库存为准
+     */
+    private List<Voucher> queryVoucherWithStock(Long shopId) {
+        List<Voucher> vouchers = listOf(voucherService.queryVoucherOfShop(shopId));
+        List<Voucher> seckillVouchers = vouchers.stream()
+                .filter(voucher -> Integer.valueOf(1).equals(voucher.getType()))
+                .collect(Collectors.toList());
+        if (seckillVouchers.isEmpty()) {
+            return vouchers;
+        }
+        List<String> keys = seckillVouchers.stream()
+                .map(voucher -> SECKILL_STOCK_KEY + voucher.getId())
+                .collect(Collectors.toList());
+        List<String> stocks = stringRedisTemplate.opsForValue().multiGet(keys);
+        for (int i = 0; stocks != null && i < stocks.size(); i++) {
+            if (stocks.get(i) != null) {
+                seckillVouchers.get(i).setStock(Integer.valueOf(stocks.get(i)));
+            }
+        }
+        return vouchers;
+    }
+
+    /**
+     * 列表元素的类型由 HmdpCacheable 的 elementType 保证
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> listOf(Result result) {
+        if (result == null || !(result.getData() instanceof List)) {
+            return Collections.emptyList();
+        }
+        return (List<T>) result.getData();
+    }
+
+    private <T> CompletableFuture<T> submitDetail(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, detailExecutor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    private static <T> T awaitDetail(CompletableFuture<T> future, long deadline, String name, ShopDetailDTO detail) {
+        try {
+            return future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            future.cancel(true);
+            log.warn("店铺详情的 {} 查询失败：{}", name, e.toString());
+        }
+        detail.getMissing().add(name);
+        return null;
+    }
+
+    private Map<Long, Shop> queryShopMap(List<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
+    }
 }
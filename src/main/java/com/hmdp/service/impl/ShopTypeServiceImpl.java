@@ -1,17 +1,17 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.ShopTypeSnapshot;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
-import java.util.List;
 
 /**
  * <p>
@@ -23,31 +23,48 @@ import java.util.List;
  */
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
-     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ShopTypeSnapshot shopTypeSnapshot;
 
     /**
-     * 查询商铺信息
-     * @return
+     * 查询商铺类型，直接使用本地快照
+     * @return 按 sort 排序的类型列表
      */
     @Override
     public Result show() {
-       String key = "SHOP_TYPE";
-    //从redis中查找
-    String shoptype = stringRedisTemplate.opsForValue().get(key);
-    //如果不为空，直接返回缓存中的信息
-    if (StrUtil.isNotBlank(shoptype)) {
-        List<ShopType> shopTypeList = JSONUtil.toList(shoptype, ShopType.class);//将String类型转化为List类型
-        return Result.ok(shopTypeList);
+        return shopTypeSnapshot.get().getResult();
     }
-    //如果为空，就从数据库中查找
-    List<ShopType> ShopTypes = query().orderByAsc("sort").list();
-    //如果数据库中为空，直接返回
-    if(ShopTypes.isEmpty()){
-        return Result.fail("未查找到商铺信息");
+
+    @Override
+    @Transactional
+    public Result saveShopType(ShopType shopType) {
+        save(shopType);
+        bumpVersionAfterCommit();
+        return Result.ok(shopType.getId());
+    }
+
+    @Override
+    @Transactional
+    public Result updateShopType(ShopType shopType) {
+        if (shopType.getId() == null) {
+            return Result.fail("类型id不能为空");
+        }
+        if (!updateById(shopType)) {
+            return Result.fail("类型不存在");
+        }
+        bumpVersionAfterCommit();
+        return Result.ok();
     }
-    //将数据缓存到Redis当中
-    stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(ShopTypes));
-    return Result.ok(ShopTypes);
+
+    /**
+     * 提交后再广播新版本，避免其它节点读到未提交的数据
+     */
+    private void bumpVersionAfterCommit() {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                shopTypeSnapshot.bumpVersion();
+            }
+        });
     }
 }
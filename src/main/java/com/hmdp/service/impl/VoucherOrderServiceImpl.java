@@ -1,12 +1,13 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.LocalCache;
 import com.hmdp.utils.RedisIdWorker;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
@@ -14,24 +15,16 @@ import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.aop.framework.AopContext;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.connection.stream.*;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
-import java.time.Duration;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.*;
 
-import static io.lettuce.core.XReadArgs.Builder.block;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
 
 /**
  * <p>
@@ -47,7 +40,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
 
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final String SOLD_OUT = "0";
 
     static {
         SECKILL_SCRIPT = new DefaultRedisScript<>();
@@ -55,7 +48,6 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
-    private final BlockingQueue<VoucherOrder> orderTasks = new ArrayBlockingQueue<>(1024 * 1024);
     @Resource
     private ISeckillVoucherService seckillVoucherService;
     @Resource
@@ -64,32 +56,45 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private StringRedisTemplate stringRedisTemplate;
     @Resource
     private RedissonClient redissonClient;
-    private IVoucherOrderService proxy;
-
-    @PostConstruct
-    private void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
-    }
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    @Resource
+    private LocalCache localCache;
 
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        long voucherId = voucherOrder.getVoucherId();
-        RLock lock = redissonClient.getLock("lock:order:" + voucherId);
+    /**
+     * 处理订单消息，由 OrderStreamConsumers 通过代理调用
+     */
+    @Override
+    public void handleVoucherOrder(VoucherOrder voucherOrder) {
+        // 多个消费者并发处理，按用户和券加锁，同一用户的不同券、同一张券的不同用户都可以同时下单
+        Long userId = voucherOrder.getUserId();
+        RLock lock = redissonClient.getLock("lock:order:" + userId + ":" + voucherOrder.getVoucherId());
         boolean isLock = lock.tryLock();
         if (!isLock) {
-            log.error("不允许重复下单");
-            return;
+            // 同一个订单正在被其它消费者处理，不能确认，留在 pending 中由 recover 重试
+            throw new IllegalStateException("订单正在处理中，userId：" + userId + "，voucherId：" + voucherOrder.getVoucherId());
         }
         try {
+            // 通过代理调用，事务才能生效
+            IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
             proxy.creatVoucherOrder(voucherOrder);
+        } catch (DuplicateKeyException e) {
+            // 批量写入不加锁，并发写入的同一订单由唯一索引 (user_id, voucher_id) 拦截，事务已回滚，视为已处理
+            log.warn("订单已存在，userId：{}，voucherId：{}", userId, voucherOrder.getVoucherId());
         } finally {
             lock.unlock();
         }
-
     }
 
     @Override
     public Result seckillVoucher(Long voucherId) {
         Long userId = UserHolder.getUser().getId();
+        //热点券已确认售罄时直接返回，不再访问 Redis
+        String stockKey = SECKILL_STOCK_KEY + voucherId;
+        hotKeyDetector.record(stockKey);
+        if (SOLD_OUT.equals(localCache.getHot(stockKey))) {
+            return Result.fail("库存不足");
+        }
         Long orderId = redisIdWorker.nextId("order");
         //执行lua脚本
         Long result = stringRedisTemplate.execute(
@@ -98,11 +103,13 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 voucherId.toString(), userId.toString(), String.valueOf(orderId));
         //判断结果为0
         int r = result.intValue();
+        if (r == 1 && hotKeyDetector.isHot(stockKey)) {
+            //库存扣减必须在lua中原子执行，本地只缓存售罄状态
+            localCache.putHot(stockKey, SOLD_OUT);
+        }
         if (r != 0) {
             return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
         }
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
-
         return Result.ok(orderId);
     }
 
@@ -129,70 +136,48 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         return Result.ok(voucherOrder);
     }
 
-
-    private class VoucherOrderHandler implements Runnable {
-        String queueName = "stream.orders";
-        @Override
-        public void run() {
-             try {
-                // 创建消费者组，如果组已存在则忽略错误
-                stringRedisTemplate.opsForStream().createGroup(queueName, "g1");
-            } catch (Exception e) {
-                 log.warn("消费者组 g1 已存在，跳过创建");
-             }
-
-            while (true) {
-                    try {
-                // 1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS s1 >
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            org.springframework.data.redis.connection.stream.Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create("stream.orders", ReadOffset.lastConsumed())
-                    );
-                    if (list == null || list.isEmpty()) {
-                        continue;
-                    }
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    handleVoucherOrder(voucherOrder);
-                    stringRedisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
-                } catch (Exception e) {
-                    log.error("处理订单异常", e);
-                    handlePendingList();
-                }
+    @Override
+    @Transactional
+    public int createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        // 1.一人一单，同一批中重复的只保留第一条
+        Map<String, VoucherOrder> orders = new LinkedHashMap<>(voucherOrders.size());
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> voucherIds = new HashSet<>();
+        for (VoucherOrder order : voucherOrders) {
+            if (orders.putIfAbsent(order.getUserId() + ":" + order.getVoucherId(), order) == null) {
+                userIds.add(order.getUserId());
+                voucherIds.add(order.getVoucherId());
             }
         }
-    }
-
-    private void handlePendingList() {
-         while (true) {
-                try {
-                    // 1.获取pending-list中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS s1 0
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1),
-                            StreamOffset.create("stream.orders", ReadOffset.from("0"))
-                    );
-                    if (list == null || list.isEmpty()) {
-                        break;
-                    }
-                    // 解析数据
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> value = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
-                    // 3.创建订单
-                    creatVoucherOrder(voucherOrder);
-                    // 4.确认消息 XACK
-                    stringRedisTemplate.opsForStream().acknowledge("s1", "g1", record.getId());
-                } catch (Exception e) {
-                    log.error("处理订单异常", e);
-                }
+        // 2.一次查询已经存在的订单，跳过
+        List<VoucherOrder> existing = query().select("user_id", "voucher_id")
+                .in("user_id", userIds).in("voucher_id", voucherIds).list();
+        for (VoucherOrder order : existing) {
+            if (orders.remove(order.getUserId() + ":" + order.getVoucherId()) != null) {
+                log.error("用户已经购买过一次，userId：{}，voucherId：{}", order.getUserId(), order.getVoucherId());
             }
         }
+        if (orders.isEmpty()) {
+            return 0;
+        }
+        // 3.按券汇总扣减数量，按券id顺序更新，多个消费者同时扣减时加行锁的顺序一致
+        Map<Long, Integer> counts = new TreeMap<>();
+        for (VoucherOrder order : orders.values()) {
+            counts.merge(order.getVoucherId(), 1, Integer::sum);
+        }
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            int count = entry.getValue();
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + count)
+                    .eq("voucher_id", entry.getKey())
+                    .ge("stock", count)
+                    .update();
+            if (!success) {
+                // 整批回滚，由调用方逐条处理
+                throw new IllegalStateException("库存不足，voucherId：" + entry.getKey());
+            }
+        }
+        // 4.一条 INSERT 写入全部订单，其它消费者并发写入的重复订单由唯一索引拦截，整批回滚后逐条处理
+        return baseMapper.insertBatch(new ArrayList<>(orders.values()));
     }
-
-
-
-
-
+}
@@ -0,0 +1,122 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * 按 key 前缀管理的 id 布隆过滤器，用于解决缓存穿透。
+ * 某个前缀还没有构建过滤器时，所有 id 都放行。
+ * 过滤器在每个节点的内存中，新增数据时各节点通过缓存失效频道收到 &lt;前缀&gt;&lt;id&gt;，把 id 加入本节点的过滤器。
+ */
+@Slf4j
+@Component
+public class CacheBloomFilter implements MessageListener {
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    @Value("${hmdp.cache.bloom.expected-insertions:1000000}")
+    private long expectedInsertions;
+
+    @Value("${hmdp.cache.bloom.fpp:0.01}")
+    private double fpp;
+
+    private final Map<String, BloomFilter> filters = new ConcurrentHashMap<>();
+    // 正在重建中的过滤器，重建期间新增的id要同时写入
+    private final Map<String, BloomFilter> building = new ConcurrentHashMap<>();
+
+    /**
+     * 判断id是否可能存在
+     *
+     * @return false 表示一定不存在
+     */
+    public boolean mightContain(String keyPrefix, Long id) {
+        BloomFilter filter = filters.get(keyPrefix);
+        return filter == null || id == null || filter.mightContain(id);
+    }
+
+    /**
+     * 新增数据后，把id加入过滤器
+     */
+    public void put(String keyPrefix, Long id) {
+        BloomFilter filter = filters.get(keyPrefix);
+        if (filter != null) {
+            filter.put(id);
+        }
+        BloomFilter rebuilding = building.get(keyPrefix);
+        if (rebuilding != null) {
+            rebuilding.put(id);
+        }
+    }
+
+    /**
+     * 收到缓存失效通知时，key 为某个已构建过滤器的前缀加 id 的，把 id 加入过滤器。
+     * 修改数据也会收到通知，重复加入没有影响
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        for (String keyPrefix : filters.keySet()) {
+            if (key.startsWith(keyPrefix)) {
+                String id = key.substring(keyPrefix.length());
+                if (StrUtil.isNumeric(id)) {
+                    put(keyPrefix, Long.valueOf(id));
+                }
+            }
+        }
+    }
+
+    /**
+     * 在线重建过滤器，构建完成后再替换旧的过滤器，重建期间旧过滤器照常使用
+     *
+     * @param keyPrefix key前缀
+     * @param idPager   按 id 分页查询，参数为上一页最后一个id和每页条数，返回升序的id列表
+     * @param aliases   同一份数据的其它缓存前缀，共用这个过滤器
+     * @return 已有重建任务在执行时返回 false
+     */
+    public boolean rebuild(String keyPrefix, BiFunction<Long, Integer, List<Long>> idPager, String... aliases) {
+        BloomFilter filter = new BloomFilter(expectedInsertions, fpp);
+        if (building.putIfAbsent(keyPrefix, filter) != null) {
+            log.warn("布隆过滤器正在重建中，前缀：{}", keyPrefix);
+            return false;
+        }
+        for (String alias : aliases) {
+            building.put(alias, filter);
+        }
+        try {
+            long begin = System.currentTimeMillis();
+            long count = 0;
+            long lastId = 0;
+            while (true) {
+                List<Long> ids = idPager.apply(lastId, REBUILD_BATCH_SIZE);
+                if (ids == null || ids.isEmpty()) {
+                    break;
+                }
+                for (Long id : ids) {
+                    filter.put(id);
+                }
+                count += ids.size();
+                lastId = ids.get(ids.size() - 1);
+            }
+            filters.put(keyPrefix, filter);
+            for (String alias : aliases) {
+                filters.put(alias, filter);
+            }
+            log.info("布隆过滤器重建完成，前缀：{}，数量：{}，耗时：{}ms", keyPrefix, count, System.currentTimeMillis() - begin);
+            return true;
+        } finally {
+            building.remove(keyPrefix);
+            for (String alias : aliases) {
+                building.remove(alias);
+            }
+        }
+    }
+}
@@ -1,81 +1,548 @@
 package com.hmdp.utils;
 
 
-import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.util.ReflectUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.Shop;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
+import static com.hmdp.utils.CacheMetrics.*;
 import static com.hmdp.utils.RedisConstants.*;
 
 @Slf4j
 @Component
 public class CacheClient {
+    private static final String CACHE_KEY_PREFIX = "cache:";
+    private static final String LOCK_KEY_PREFIX = "lock:";
+    // 等待其它节点重建缓存的最长时间
+    private static final long LOCK_WAIT_SECONDS = 3L;
+    // Hash 结构中表示数据不存在的字段
+    private static final String HASH_NULL_FIELD = "_null";
+    private static final DefaultRedisScript<Long> HINCRBY_SCRIPT;
+    private static final DefaultRedisScript<Long> HSET_SCRIPT;
+
+    static {
+        HINCRBY_SCRIPT = new DefaultRedisScript<>();
+        HINCRBY_SCRIPT.setLocation(new ClassPathResource("hincrby_if_exists.lua"));
+        HINCRBY_SCRIPT.setResultType(Long.class);
+        HSET_SCRIPT = new DefaultRedisScript<>();
+        HSET_SCRIPT.setLocation(new ClassPathResource("hset_if_exists.lua"));
+        HSET_SCRIPT.setResultType(Long.class);
+    }
+
     private final StringRedisTemplate stringRedisTemplate;
+    private final RedissonClient redissonClient;
+    private final LocalCache localCache;
+    private final CacheBloomFilter cacheBloomFilter;
+    private final CacheRefresher cacheRefresher;
+    private final HotKeyDetector hotKeyDetector;
+    private final CacheCodecs cacheCodecs;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final CacheMetrics cacheMetrics;
+    private final SingleFlight singleFlight = new SingleFlight();
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    public CacheClient(StringRedisTemplate stringRedisTemplate, RedissonClient redissonClient,
+                       LocalCache localCache, CacheBloomFilter cacheBloomFilter,
+                       CacheRefresher cacheRefresher, HotKeyDetector hotKeyDetector,
+                       CacheCodecs cacheCodecs, CircuitBreakerRegistry circuitBreakerRegistry,
+                       CacheMetrics cacheMetrics) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.redissonClient = redissonClient;
+        this.localCache = localCache;
+        this.cacheBloomFilter = cacheBloomFilter;
+        this.cacheRefresher = cacheRefresher;
+        this.hotKeyDetector = hotKeyDetector;
+        this.cacheCodecs = cacheCodecs;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.cacheMetrics = cacheMetrics;
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        byte[] bytes = cacheCodecs.encode(key, value);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.stringCommands()
+                .set(rawKey(key), bytes, Expiration.from(time, unit), RedisStringCommands.SetOption.upsert()));
     }
 
     public void setWithLogicaExpire(String key, Object value, Long time, TimeUnit unit) {
+        writeWithLogicalExpire(key, value, time, unit);
+    }
+
+    private LocalDateTime writeWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
         //设置逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        byte[] bytes = cacheCodecs.encodeWithExpire(key, value, expireTime);
 
         //写入redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.stringCommands().set(rawKey(key), bytes));
+        return expireTime;
+    }
+
+    /**
+     * 通过一次 pipeline 批量写入缓存和影子key。
+     * 过期时间会加上最多 10% 的随机值，避免批量写入的key同时过期
+     *
+     * @param keyPrefix key前缀
+     * @param values    id -> 对象
+     * @param time      缓存时间
+     * @param unit      时间单位
+     */
+    public void setBatch(String keyPrefix, Map<Long, ?> values, Long time, TimeUnit unit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        long seconds = unit.toSeconds(time);
+        long shadowSeconds = TimeUnit.HOURS.toSeconds(CACHE_SHADOW_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<Long, ?> entry : values.entrySet()) {
+                String key = keyPrefix + entry.getKey();
+                byte[] bytes = cacheCodecs.encode(key, entry.getValue());
+                long jitter = ThreadLocalRandom.current().nextLong(seconds / 10 + 1);
+                connection.stringCommands().setEx(rawKey(key), seconds + jitter, bytes);
+                connection.stringCommands().setEx(rawKey(CACHE_SHADOW_KEY + key), shadowSeconds, bytes);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 删除缓存，同时清除所有节点的本地缓存
+     *
+     * @param key 完整的key
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        localCache.invalidate(key);
     }
 
     public <R> R queryWithPassThrough(String keyPrefix, Long id, Class<R> type, Function<Long, R> dbFallback, Long time, TimeUnit unit) {
         // 定义 Redis 键
         String key = keyPrefix + id;
+        //0.布隆过滤器判断一定不存在的id直接返回
+        if (!cacheBloomFilter.mightContain(keyPrefix, id)) {
+            cacheMetrics.recordResult(keyPrefix, PASS_THROUGH, BLOOM_REJECT);
+            return null;
+        }
+        //0.1先查本地缓存
+        R local = localCache.get(keyPrefix, key, type);
+        if (local != null) {
+            cacheMetrics.recordResult(keyPrefix, PASS_THROUGH, LOCAL_HIT);
+            return local;
+        }
         //1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getFromRedis(keyPrefix, key);
         //2判断是否存在
-        if (StrUtil.isNotBlank(json)) {
-            //3，存在直接返回
-            return JSONUtil.toBean(json, type);
+        if (isNotEmpty(bytes)) {
+            //3，存在写入本地缓存并返回
+            R r = decode(keyPrefix, bytes, type);
+            localCache.put(keyPrefix, key, r);
+            cacheMetrics.recordResult(keyPrefix, PASS_THROUGH, HIT);
+            return r;
         }
         //判断命中是否是空值
-        if (json != null) {
+        if (bytes != null) {
             //返回错误信息
+            cacheMetrics.recordResult(keyPrefix, PASS_THROUGH, NULL_HIT);
+            return null;
+        }
+
+        //4.不存在查询id数据库，同一个key在本节点只查一次
+        cacheMetrics.recordResult(keyPrefix, PASS_THROUGH, MISS);
+        return singleFlight.execute(key, () -> cacheMetrics.recordRebuild(keyPrefix, PASS_THROUGH,
+                () -> loadAndCache(keyPrefix, id, type, dbFallback, time, unit, PASS_THROUGH)));
+    }
+
+    /**
+     * 互斥锁解决缓存击穿问题。
+     * 本节点内同一个key的并发未命中合并为一次加载，节点之间通过 Redisson 分布式锁互斥，
+     * 拿到锁后再检查一次缓存，保证整个集群对一个过期的key只查一次数据库。
+     * 等锁基于 Redisson 的 pub/sub 通知，不会轮询休眠。
+     */
+    public <R> R queryWithMutex(String keyPrefix, Long id, Class<R> type, Function<Long, R> dbFallback, Long time, TimeUnit unit) {
+        // 定义 Redis 键
+        String key = keyPrefix + id;
+        //0.布隆过滤器判断一定不存在的id直接返回
+        if (!cacheBloomFilter.mightContain(keyPrefix, id)) {
+            cacheMetrics.recordResult(keyPrefix, MUTEX, BLOOM_REJECT);
             return null;
         }
+        //0.1先查本地缓存
+        R local = localCache.get(keyPrefix, key, type);
+        if (local != null) {
+            cacheMetrics.recordResult(keyPrefix, MUTEX, LOCAL_HIT);
+            return local;
+        }
+        //1.从redis查询缓存
+        byte[] bytes = getFromRedis(keyPrefix, key);
+        //2.命中直接返回
+        if (isNotEmpty(bytes)) {
+            R r = decode(keyPrefix, bytes, type);
+            localCache.put(keyPrefix, key, r);
+            cacheMetrics.recordResult(keyPrefix, MUTEX, HIT);
+            return r;
+        }
+        //3.命中空值
+        if (bytes != null) {
+            cacheMetrics.recordResult(keyPrefix, MUTEX, NULL_HIT);
+            return null;
+        }
+        //4.未命中，本节点只有一个线程去重建，其余线程等待它的结果
+        cacheMetrics.recordResult(keyPrefix, MUTEX, MISS);
+        return singleFlight.execute(key, () -> cacheMetrics.recordRebuild(keyPrefix, MUTEX,
+                () -> rebuildWithMutex(keyPrefix, id, type, dbFallback, time, unit)));
+    }
+
+    private <R> R rebuildWithMutex(String keyPrefix, Long id, Class<R> type, Function<Long, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        //1.获取分布式互斥锁
+        RLock lock = redissonClient.getLock(lockKeyOf(keyPrefix) + id);
+        boolean isLock;
+        try {
+            isLock = lock.tryLock(LOCK_WAIT_SECONDS, LOCK_SHOP_TTL, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (!isLock) {
+            //2.等锁超时，直接查数据库兜底，不写缓存
+            log.warn("等待缓存重建超时，key：{}", key);
+            return loadFromDb(keyPrefix, key, type, () -> dbFallback.apply(id), MUTEX).value;
+        }
+        try {
+            //3.拿到锁后再查一次缓存，其它节点可能已经重建好了
+            byte[] bytes = cacheMetrics.recordRedis(keyPrefix, () -> getBytes(key));
+            if (isNotEmpty(bytes)) {
+                R r = decode(keyPrefix, bytes, type);
+                localCache.put(keyPrefix, key, r);
+                return r;
+            }
+            if (bytes != null) {
+                return null;
+            }
+            //4.查询数据库并写入缓存
+            return loadAndCache(keyPrefix, id, type, dbFallback, time, unit, MUTEX);
+        } finally {
+            //5.释放锁
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
 
-        //4.不存在查询id数据库
-        R r = dbFallback.apply(id);
-        //5，不存在返回错误
+    /**
+     * 查询数据库并写入缓存，不存在时写入空值
+     */
+    private <R> R loadAndCache(String keyPrefix, Long id, Class<R> type, Function<Long, R> dbFallback,
+                               Long time, TimeUnit unit, String strategy) {
+        String key = keyPrefix + id;
+        //1.查询数据库
+        Loaded<R> loaded = loadFromDb(keyPrefix, key, type, () -> dbFallback.apply(id), strategy);
+        R r = loaded.value;
+        if (loaded.shadow) {
+            //影子key中的过期数据只返回，不写回缓存，也不延长影子key，数据库恢复后下一次请求重新加载
+            return r;
+        }
+        //2，不存在返回错误
         if (r == null) {
             //将空值写入 redis
             stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
             //返回错误信息
             return null;
         }
-        //6.存在写入redis
-        this.set(key, r, time, unit);
-        //6.返回
+        //3.存在写入redis和本地缓存
+        setWithShadow(key, r, time, unit);
+        localCache.put(keyPrefix, key, r);
         return r;
     }
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 在熔断器保护下查询数据库。
+     * 数据库异常、变慢或熔断器打开时，返回影子key中保存的最后一次的值，并标记为过期数据；没有影子值时快速失败
+     */
+    private <R> Loaded<R> loadFromDb(String keyPrefix, String key, Class<R> type, Supplier<R> loader, String strategy) {
+        try {
+            return new Loaded<>(cacheMetrics.recordDb(keyPrefix, strategy,
+                    () -> circuitBreakerRegistry.of(keyPrefix).execute(loader)), false);
+        } catch (RuntimeException e) {
+            byte[] bytes = getBytes(CACHE_SHADOW_KEY + key);
+            if (isNotEmpty(bytes)) {
+                log.warn("数据库加载失败，返回过期数据，key：{}，原因：{}", key, e.getMessage());
+                cacheMetrics.recordResult(keyPrefix, strategy, SHADOW);
+                return new Loaded<>(cacheCodecs.decode(keyPrefix, bytes, type), true);
+            }
+            throw e;
+        }
+    }
 
     /**
-     * 逻辑过期解决缓存击穿问题
+     * loadFromDb 的结果，shadow 为 true 表示值来自影子key，调用方不能把它当作新数据写回缓存
+     */
+    private static class Loaded<R> {
+        private final R value;
+        private final boolean shadow;
+
+        private Loaded(R value, boolean shadow) {
+            this.value = value;
+            this.shadow = shadow;
+        }
+    }
+
+    /**
+     * 写入缓存，同时写入保存时间更长的影子key，供数据库不可用时降级使用
+     */
+    private void setWithShadow(String key, Object value, Long time, TimeUnit unit) {
+        byte[] bytes = cacheCodecs.encode(key, value);
+        long seconds = unit.toSeconds(time);
+        long shadowSeconds = TimeUnit.HOURS.toSeconds(CACHE_SHADOW_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().setEx(rawKey(key), seconds, bytes);
+            connection.stringCommands().setEx(rawKey(CACHE_SHADOW_KEY + key), shadowSeconds, bytes);
+            return null;
+        });
+    }
+
+    /**
+     * 批量查询缓存：一次 MGET 查询所有key，未命中的id合并为一次数据库查询，
+     * 查询结果通过一次 pipeline 写回 Redis，返回结果与传入的id顺序一致，不存在的id会被跳过
+     *
+     * @param keyPrefix       key前缀
+     * @param ids             id列表
+     * @param type            缓存对象类型
+     * @param dbBatchFallback 根据id列表批量查询数据库，返回 id -> 对象
+     * @param time            缓存时间
+     * @param unit            时间单位
+     * @return 按id顺序排列的对象列表
+     */
+    public <R> List<R> queryBatch(String keyPrefix, List<Long> ids, Class<R> type,
+                                  Function<List<Long>, Map<Long, R>> dbBatchFallback, Long time, TimeUnit unit) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        //1.一次 MGET 查询所有缓存
+        byte[][] keys = new byte[ids.size()][];
+        for (int i = 0; i < ids.size(); i++) {
+            keys[i] = rawKey(keyPrefix + ids.get(i));
+        }
+        List<byte[]> values = cacheMetrics.recordRedis(keyPrefix, () -> stringRedisTemplate.execute(
+                (RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(keys)));
+        //2.解析命中的数据，收集未命中的id
+        Map<Long, R> found = new HashMap<>(ids.size());
+        Set<Long> missIds = new LinkedHashSet<>();
+        int nullHits = 0;
+        int bloomRejects = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            byte[] bytes = values == null ? null : values.get(i);
+            if (isNotEmpty(bytes)) {
+                found.put(id, decode(keyPrefix, bytes, type));
+            } else if (bytes != null) {
+                nullHits++;
+            } else if (cacheBloomFilter.mightContain(keyPrefix, id)) {
+                missIds.add(id);
+            } else {
+                bloomRejects++;
+            }
+        }
+        cacheMetrics.recordResult(keyPrefix, BATCH, HIT, found.size());
+        cacheMetrics.recordResult(keyPrefix, BATCH, NULL_HIT, nullHits);
+        cacheMetrics.recordResult(keyPrefix, BATCH, BLOOM_REJECT, bloomRejects);
+        cacheMetrics.recordResult(keyPrefix, BATCH, MISS, missIds.size());
+        //3.未命中的id一次查询数据库，并通过 pipeline 写回 Redis
+        if (!missIds.isEmpty()) {
+            Map<Long, R> loaded;
+            try {
+                loaded = cacheMetrics.recordDb(keyPrefix, BATCH, () -> circuitBreakerRegistry.of(keyPrefix)
+                        .execute(() -> dbBatchFallback.apply(new ArrayList<>(missIds))));
+            } catch (RuntimeException e) {
+                //数据库不可用，从影子key中取最后一次的值
+                log.warn("数据库批量加载失败，返回过期数据，前缀：{}，原因：{}", keyPrefix, e.getMessage());
+                Map<Long, R> shadows = queryShadowBatch(keyPrefix, missIds, type);
+                cacheMetrics.recordResult(keyPrefix, BATCH, SHADOW, shadows.size());
+                found.putAll(shadows);
+                missIds.clear();
+                loaded = Collections.emptyMap();
+            }
+            found.putAll(loaded);
+            long seconds = unit.toSeconds(time);
+            long nullSeconds = TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL);
+            long shadowSeconds = TimeUnit.HOURS.toSeconds(CACHE_SHADOW_TTL);
+            Map<Long, R> toWrite = loaded;
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Long id : missIds) {
+                    String key = keyPrefix + id;
+                    R r = toWrite.get(id);
+                    if (r == null) {
+                        //不存在的id写入空值
+                        connection.stringCommands().setEx(rawKey(key), nullSeconds, new byte[0]);
+                    } else {
+                        byte[] bytes = cacheCodecs.encode(key, r);
+                        connection.stringCommands().setEx(rawKey(key), seconds, bytes);
+                        connection.stringCommands().setEx(rawKey(CACHE_SHADOW_KEY + key), shadowSeconds, bytes);
+                    }
+                }
+                return null;
+            });
+        }
+        //4.按传入的id顺序返回
+        List<R> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            R r = found.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    private <R> Map<Long, R> queryShadowBatch(String keyPrefix, Collection<Long> ids, Class<R> type) {
+        List<Long> idList = new ArrayList<>(ids);
+        byte[][] keys = new byte[idList.size()][];
+        for (int i = 0; i < idList.size(); i++) {
+            keys[i] = rawKey(CACHE_SHADOW_KEY + keyPrefix + idList.get(i));
+        }
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(keys));
+        Map<Long, R> result = new HashMap<>(idList.size());
+        for (int i = 0; values != null && i < idList.size(); i++) {
+            byte[] bytes = values.get(i);
+            if (isNotEmpty(bytes)) {
+                result.put(idList.get(i), cacheCodecs.decode(keyPrefix, bytes, type));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 以 Hash 结构缓存对象，每个字段单独保存。
+     * 计数类字段通过 incrementHashField 原地修改，不需要删除整个缓存再从数据库重新加载
+     *
+     * @param keyPrefix  key前缀
+     * @param id         id
+     * @param type       缓存对象类型
+     * @param dbFallback 查询数据库
+     * @param time       缓存时间
+     * @param unit       时间单位
+     */
+    public <R> R queryHash(String keyPrefix, Long id, Class<R> type, Function<Long, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        //1.布隆过滤器判断一定不存在的id直接返回
+        if (!cacheBloomFilter.mightContain(keyPrefix, id)) {
+            cacheMetrics.recordResult(keyPrefix, HASH, BLOOM_REJECT);
+            return null;
+        }
+        //2.HGETALL 查询所有字段
+        Map<Object, Object> entries = cacheMetrics.recordRedis(keyPrefix, () -> stringRedisTemplate.opsForHash().entries(key));
+        if (!entries.isEmpty()) {
+            if (entries.containsKey(HASH_NULL_FIELD)) {
+                cacheMetrics.recordResult(keyPrefix, HASH, NULL_HIT);
+                return null;
+            }
+            cacheMetrics.recordResult(keyPrefix, HASH, HIT);
+            return BeanUtil.fillBeanWithMap(entries, ReflectUtil.newInstance(type), false);
+        }
+        //3.未命中，本节点只有一个线程查询数据库
+        cacheMetrics.recordResult(keyPrefix, HASH, MISS);
+        return singleFlight.execute(key, () -> cacheMetrics.recordRebuild(keyPrefix, HASH,
+                () -> loadHash(keyPrefix, id, type, dbFallback, time, unit)));
+    }
+
+    /**
+     * 通过 HMGET 只查询部分字段，其余字段为 null。
+     * 所有字段都为空时可能是缓存不存在，按 queryHash 加载完整对象
+     */
+    public <R> R queryHashFields(String keyPrefix, Long id, Class<R> type, Function<Long, R> dbFallback,
+                                 Long time, TimeUnit unit, String... fields) {
+        String key = keyPrefix + id;
+        List<Object> values = cacheMetrics.recordRedis(keyPrefix,
+                () -> stringRedisTemplate.opsForHash().multiGet(key, Arrays.asList((Object[]) fields)));
+        Map<String, Object> found = new HashMap<>(fields.length);
+        for (int i = 0; i < fields.length; i++) {
+            if (values.get(i) != null) {
+                found.put(fields[i], values.get(i));
+            }
+        }
+        if (found.isEmpty()) {
+            return queryHash(keyPrefix, id, type, dbFallback, time, unit);
+        }
+        cacheMetrics.recordResult(keyPrefix, HASH, HIT);
+        return BeanUtil.fillBeanWithMap(found, ReflectUtil.newInstance(type), false);
+    }
+
+    /**
+     * 原地修改 Hash 缓存中的计数字段，缓存不存在时不做任何事，下次查询会从数据库加载最新值
+     *
+     * @param key   完整的key
+     * @param field 字段名
+     * @param delta 增量
+     */
+    public void incrementHashField(String key, String field, long delta) {
+        stringRedisTemplate.execute(HINCRBY_SCRIPT, Collections.singletonList(key), field, String.valueOf(delta));
+    }
+
+    /**
+     * 修改 Hash 缓存中的单个字段，缓存不存在时不做任何事
+     */
+    public void setHashField(String key, String field, Object value) {
+        stringRedisTemplate.execute(HSET_SCRIPT, Collections.singletonList(key), field, value.toString());
+    }
+
+    /**
+     * 查询数据库并以 Hash 结构写入缓存，不存在时写入只有空值标记的 Hash。
+     * 删除旧值和写入新值放在一个事务中，避免并发的 HINCRBY 写到一半的 Hash 上
+     */
+    private <R> R loadHash(String keyPrefix, Long id, Class<R> type, Function<Long, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        Loaded<R> loaded = loadFromDb(keyPrefix, key, type, () -> dbFallback.apply(id), HASH);
+        R r = loaded.value;
+        if (loaded.shadow) {
+            //过期数据不写回缓存
+            return r;
+        }
+        Map<String, String> fields = new HashMap<>();
+        long seconds;
+        if (r == null) {
+            fields.put(HASH_NULL_FIELD, "");
+            seconds = TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL);
+        } else {
+            Map<String, Object> beanMap = BeanUtil.beanToMap(r, new HashMap<>(), CopyOptions.create()
+                    .setIgnoreNullValue(true)
+                    .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
+            beanMap.forEach((fieldName, fieldValue) -> fields.put(fieldName, (String) fieldValue));
+            seconds = unit.toSeconds(time);
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.multi();
+            stringConnection.del(key);
+            stringConnection.hMSet(key, fields);
+            stringConnection.expire(key, seconds);
+            stringConnection.exec();
+            return null;
+        });
+        return r;
+    }
+
+    /**
+     * 逻辑过期解决缓存击穿问题。
+     * 每次访问都会记录到 CacheRefresher，热点key会在逻辑过期前被提前刷新；
+     * 读到已过期的数据时先返回旧数据，同时提交一次去重后的异步重建
      *
      * @param id
      * @return
@@ -84,73 +551,115 @@ public class CacheClient {
         // 定义 Redis 键
         String key = keyPrefix + id;
         //1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getFromRedis(keyPrefix, key);
         //2判断是否存在
-        if (StrUtil.isBlank(json)) {
-            //3，存在直接返回
+        if (!isNotEmpty(bytes)) {
+            //3，不存在直接返回
+            cacheMetrics.recordResult(keyPrefix, LOGICAL_EXPIRE, MISS);
             return null;
         }
-        //4命中需要把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        //4命中需要反序列化为对象，过期时间在头部，只解析一次
+        RedisData redisData = cacheMetrics.recordDecode(keyPrefix, () -> cacheCodecs.decodeWithExpire(keyPrefix, bytes, type));
+        if (redisData.getData() == null) {
+            cacheMetrics.recordResult(keyPrefix, LOGICAL_EXPIRE, NULL_HIT);
+            return null;
+        }
+        R r = type.cast(redisData.getData());
         LocalDateTime expireTime = redisData.getExpireTime();
-        //5判断是否过期
+        Supplier<LocalDateTime> rebuild = () -> cacheMetrics.recordRebuild(keyPrefix, LOGICAL_EXPIRE,
+                () -> rebuildWithLogicalExpire(keyPrefix, id, dbFallback, time, unit));
+        //5记录访问，热点key会在过期前被提前刷新
+        cacheRefresher.recordAccess(key, expireTime, rebuild);
+        //6判断是否过期
         if (expireTime.isAfter(LocalDateTime.now())) {
-            //5.1未过期直接返回店铺信息
+            //6.1未过期直接返回店铺信息
+            cacheMetrics.recordResult(keyPrefix, LOGICAL_EXPIRE, HIT);
             return r;
         }
-        //5.2已过期需要缓存重建
-
-        //6缓存重建
-
-        //6.1获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = trtLock(lockKey);
+        //6.2已过期，提交异步重建，同一个key只会有一个重建任务
+        cacheMetrics.recordResult(keyPrefix, LOGICAL_EXPIRE, STALE);
+        cacheRefresher.refresh(key, rebuild);
+        //6.3返回过期店铺信息
+        return r;
+    }
 
-        //6.2判断是否获取成功
-        if (!isLock) {
-            //6.3成功开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    //重建缓存
-                    R r1 = dbFallback.apply(id);
-                    //写入redis
-                    this.setWithLogicaExpire(key, r1, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    //释放锁
-                    unlock(lockKey);
+    /**
+     * 重建逻辑过期缓存，其它节点正在重建或刚刚重建过时直接跳过
+     *
+     * @return 新的逻辑过期时间，没有重建时返回 null
+     */
+    private <R, ID> LocalDateTime rebuildWithLogicalExpire(String keyPrefix, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        //1.获取互斥锁，锁前缀与缓存前缀对应
+        RLock lock = redissonClient.getLock(lockKeyOf(keyPrefix) + id);
+        if (!lock.tryLock()) {
+            return null;
+        }
+        try {
+            //2.拿到锁后再读一次逻辑过期时间，其它节点已经刷新过时不再查询数据库
+            byte[] current = getBytes(key);
+            if (isNotEmpty(current)) {
+                LocalDateTime expireTime = cacheCodecs.expireTimeOf(keyPrefix, current);
+                if (expireTime != null && !cacheRefresher.isDue(expireTime)) {
+                    return expireTime;
                 }
-            });
+            }
+            //3.查询数据库，熔断器打开时直接跳过，继续使用旧数据
+            R r = cacheMetrics.recordDb(keyPrefix, LOGICAL_EXPIRE,
+                    () -> circuitBreakerRegistry.of(keyPrefix).execute(() -> dbFallback.apply(id)));
+            if (r == null) {
+                //数据已被删除，清除缓存并停止刷新
+                stringRedisTemplate.delete(key);
+                cacheRefresher.remove(key);
+                return null;
+            }
+            //4.写入redis，清除本节点的热点副本
+            LocalDateTime expireTime = writeWithLogicalExpire(key, r, time, unit);
+            localCache.invalidateHot(key);
+            return expireTime;
+        } finally {
+            //5.释放锁
+            lock.unlock();
         }
+    }
 
+    /**
+     * 从 Redis 读取缓存，同时记录访问频率；热点key优先读取本地短期副本，减轻单个 Redis 分片的压力
+     */
+    private byte[] getFromRedis(String keyPrefix, String key) {
+        hotKeyDetector.record(key);
+        if (!hotKeyDetector.isHot(key)) {
+            return cacheMetrics.recordRedis(keyPrefix, () -> getBytes(key));
+        }
+        Object value = localCache.getHot(key);
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        byte[] bytes = cacheMetrics.recordRedis(keyPrefix, () -> getBytes(key));
+        localCache.putHot(key, bytes);
+        return bytes;
+    }
 
-        //6.4返回过期店铺信息
+    private <R> R decode(String keyPrefix, byte[] bytes, Class<R> type) {
+        return cacheMetrics.recordDecode(keyPrefix, () -> cacheCodecs.decode(keyPrefix, bytes, type));
+    }
 
+    private byte[] getBytes(String key) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey(key)));
+    }
 
-        return r;
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
     }
 
-    /**
-     * 获取互斥锁
-     *
-     * @param key
-     * @return
-     */
-    private boolean trtLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(flag);
+    private static boolean isNotEmpty(byte[] bytes) {
+        return bytes != null && bytes.length > 0;
     }
 
     /**
-     * 释放互斥锁
-     *
-     * @param key
+     * 根据缓存前缀得到锁前缀，例如 cache:shop: 对应 lock:shop:
      */
-    private void unlock(String key) {
-        stringRedisTemplate.delete(key);
+    private static String lockKeyOf(String keyPrefix) {
+        return LOCK_KEY_PREFIX + StrUtil.removePrefix(keyPrefix, CACHE_KEY_PREFIX);
     }
-
-
-}
\ No newline at end of file
+}
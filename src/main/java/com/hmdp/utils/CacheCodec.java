@@ -0,0 +1,24 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存值的编解码器。
+ * 写入 Redis 的值以一个字节的头部开始，低 6 位是编码器的 id，0x40 位表示 LZ4 压缩，0x80 位表示带逻辑过期时间，
+ * 见 CacheCodecs。读取时根据头部选择编码器，
+ * 因此切换编码器后新旧格式可以同时存在，旧数据会在过期或重建时自然迁移。
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码器id，写在值头部的低 6 位，取值 1~63，不能重复，也不能修改；更大的值会与压缩标志冲突
+     */
+    byte id();
+
+    /**
+     * 编码器名称，用于配置
+     */
+    String name();
+
+    byte[] encode(Object value);
+
+    <T> T decode(byte[] bytes, int offset, int length, Class<T> type);
+}
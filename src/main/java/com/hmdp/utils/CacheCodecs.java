@@ -0,0 +1,200 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.config.CacheCodecProperties;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 缓存编码器的注册表，按 key 前缀选择编码器，并负责值的头部格式：
+ * <pre>
+ * 普通值：    [编码器id][数据]
+ * 逻辑过期值：[编码器id | 0x80][8字节过期时间戳][数据]
+ * 压缩值：    头部再加上 0x40，数据部分为 [4字节原始长度][LZ4数据]
+ * </pre>
+ * 逻辑过期时间直接写在头部，读取时不再需要先把 RedisData 解析成 JSONObject 再转换一次。
+ * 没有头部的旧数据（hutool 写入的 JSON 字符串）按原来的方式解析。
+ * 编码后超过阈值的数据使用 LZ4 压缩，压缩后没有变小时保持原样，新旧格式的值可以同时存在。
+ */
+@Component
+public class CacheCodecs {
+    private static final int LOGICAL_EXPIRE_FLAG = 0x80;
+    private static final int COMPRESSED_FLAG = 0x40;
+    private static final int ID_MASK = 0x3F;
+
+    private final CacheCodec[] codecsById = new CacheCodec[ID_MASK + 1];
+    private final Map<String, CacheCodec> codecsByName = new HashMap<>();
+    private final CacheCodecProperties properties;
+    private final CacheMetrics cacheMetrics;
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    public CacheCodecs(ObjectMapper objectMapper, CacheCodecProperties properties, CacheMetrics cacheMetrics) {
+        this.properties = properties;
+        this.cacheMetrics = cacheMetrics;
+        register(new JacksonCacheCodec(objectMapper));
+        register(new SmileCacheCodec());
+    }
+
+    private void register(CacheCodec codec) {
+        codecsById[codec.id()] = codec;
+        codecsByName.put(codec.name(), codec);
+    }
+
+    public byte[] encode(String key, Object value) {
+        CacheCodec codec = codecOf(key);
+        byte[] data = codec.encode(value);
+        byte[] compressed = compress(key, data);
+        int header = codec.id();
+        if (compressed != null) {
+            header |= COMPRESSED_FLAG;
+            data = compressed;
+        }
+        byte[] bytes = new byte[data.length + 1];
+        bytes[0] = (byte) header;
+        System.arraycopy(data, 0, bytes, 1, data.length);
+        return bytes;
+    }
+
+    public byte[] encodeWithExpire(String key, Object value, LocalDateTime expireTime) {
+        CacheCodec codec = codecOf(key);
+        byte[] data = codec.encode(value);
+        byte[] compressed = compress(key, data);
+        int header = codec.id() | LOGICAL_EXPIRE_FLAG;
+        if (compressed != null) {
+            header |= COMPRESSED_FLAG;
+            data = compressed;
+        }
+        return ByteBuffer.allocate(data.length + 9)
+                .put((byte) header)
+                .putLong(expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli())
+                .put(data)
+                .array();
+    }
+
+    /**
+     * @param key 完整的key或key前缀，用于统计解压耗时
+     */
+    public <T> T decode(String key, byte[] bytes, Class<T> type) {
+        CacheCodec codec = codecOfHeader(bytes);
+        if (codec == null) {
+            // 旧格式
+            return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+        }
+        if (!isCompressed(bytes)) {
+            return codec.decode(bytes, 1, bytes.length - 1, type);
+        }
+        byte[] data = decompress(key, bytes, 1);
+        return codec.decode(data, 0, data.length, type);
+    }
+
+    /**
+     * 解析逻辑过期的值
+     *
+     * @param key 完整的key或key前缀，用于统计解压耗时
+     * @return data 为 type 类型的 RedisData
+     */
+    public RedisData decodeWithExpire(String key, byte[] bytes, Class<?> type) {
+        CacheCodec codec = codecOfHeader(bytes);
+        RedisData redisData;
+        if (codec == null) {
+            // 旧格式
+            redisData = JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), RedisData.class);
+            if (redisData.getData() != null) {
+                redisData.setData(JSONUtil.toBean((JSONObject) redisData.getData(), type));
+            }
+            return redisData;
+        }
+        long expireMillis = ByteBuffer.wrap(bytes, 1, 8).getLong();
+        redisData = new RedisData();
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireMillis), ZoneId.systemDefault()));
+        if (isCompressed(bytes)) {
+            byte[] data = decompress(key, bytes, 9);
+            redisData.setData(codec.decode(data, 0, data.length, type));
+        } else {
+            redisData.setData(codec.decode(bytes, 9, bytes.length - 9, type));
+        }
+        return redisData;
+    }
+
+    /**
+     * 只解析逻辑过期时间，新格式不需要反序列化数据
+     */
+    public LocalDateTime expireTimeOf(String key, byte[] bytes) {
+        if (codecOfHeader(bytes) == null) {
+            return decodeWithExpire(key, bytes, Map.class).getExpireTime();
+        }
+        long expireMillis = ByteBuffer.wrap(bytes, 1, 8).getLong();
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(expireMillis), ZoneId.systemDefault());
+    }
+
+    private CacheCodec codecOfHeader(byte[] bytes) {
+        return codecsById[bytes[0] & ID_MASK];
+    }
+
+    private static boolean isCompressed(byte[] bytes) {
+        return (bytes[0] & COMPRESSED_FLAG) != 0;
+    }
+
+    /**
+     * 超过阈值时压缩
+     *
+     * @return [4字节原始长度][LZ4数据]，不需要压缩或压缩后没有变小时返回 null
+     */
+    private byte[] compress(String key, byte[] data) {
+        int threshold = properties.getCompressThreshold();
+        if (threshold <= 0 || data.length <= threshold) {
+            return null;
+        }
+        long begin = System.nanoTime();
+        byte[] buffer = new byte[4 + compressor.maxCompressedLength(data.length)];
+        int length = compressor.compress(data, 0, data.length, buffer, 4);
+        cacheMetrics.recordCompress(key, data.length, length + 4, System.nanoTime() - begin);
+        if (length + 4 >= data.length) {
+            return null;
+        }
+        ByteBuffer.wrap(buffer).putInt(data.length);
+        byte[] compressed = new byte[length + 4];
+        System.arraycopy(buffer, 0, compressed, 0, compressed.length);
+        return compressed;
+    }
+
+    private byte[] decompress(String key, byte[] bytes, int offset) {
+        long begin = System.nanoTime();
+        int originalLength = ByteBuffer.wrap(bytes, offset, 4).getInt();
+        byte[] data = new byte[originalLength];
+        decompressor.decompress(bytes, offset + 4, data, 0, originalLength);
+        cacheMetrics.recordDecompress(key, System.nanoTime() - begin);
+        return data;
+    }
+
+    /**
+     * 按最长匹配的前缀选择编码器
+     */
+    private CacheCodec codecOf(String key) {
+        String matched = null;
+        for (String prefix : properties.getPrefixes().keySet()) {
+            if (key.startsWith(prefix) && (matched == null || prefix.length() > matched.length())) {
+                matched = prefix;
+            }
+        }
+        String name = matched == null ? properties.getDefaultCodec() : properties.getPrefixes().get(matched);
+        CacheCodec codec = codecsByName.get(name);
+        if (codec == null) {
+            throw new IllegalStateException("未知的缓存编码：" + name);
+        }
+        return codec;
+    }
+}
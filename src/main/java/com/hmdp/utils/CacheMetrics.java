@@ -0,0 +1,121 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 缓存指标，按 key 前缀和缓存策略打标签，通过 /actuator/metrics 查看，例如
+ * /actuator/metrics/hmdp.cache.requests?tag=prefix:cache:shop:&amp;tag=result:hit
+ * <pre>
+ * hmdp.cache.requests  查询结果计数，result：local_hit、hit、null_hit、miss、bloom_reject、stale、shadow
+ * hmdp.cache.redis     Redis 读取耗时
+ * hmdp.cache.decode    反序列化耗时
+ * hmdp.cache.db        数据库加载耗时，outcome：success、failure
+ * hmdp.cache.rebuild   缓存重建耗时，包含等锁、查库和写回
+ * hmdp.cache.compress  LZ4 压缩/解压耗时，op：compress、decompress
+ * hmdp.cache.compress.bytes  压缩前后的字节数，stage：raw、compressed，两者之比即压缩率
+ * hmdp.geo.rebuild     店铺坐标全量重建耗时，hmdp.geo.rebuild.shops 为写入的店铺数
+ * </pre>
+ */
+@Component
+public class CacheMetrics {
+    public static final String PASS_THROUGH = "pass-through";
+    public static final String MUTEX = "mutex";
+    public static final String LOGICAL_EXPIRE = "logical-expire";
+    public static final String BATCH = "batch";
+    public static final String HASH = "hash";
+
+    public static final String LOCAL_HIT = "local_hit";
+    public static final String HIT = "hit";
+    public static final String NULL_HIT = "null_hit";
+    public static final String MISS = "miss";
+    public static final String BLOOM_REJECT = "bloom_reject";
+    // 逻辑过期后返回的旧数据
+    public static final String STALE = "stale";
+    // 数据库不可用时返回的影子数据
+    public static final String SHADOW = "shadow";
+
+    private final MeterRegistry registry;
+
+    public CacheMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void recordResult(String keyPrefix, String strategy, String result) {
+        recordResult(keyPrefix, strategy, result, 1);
+    }
+
+    public void recordResult(String keyPrefix, String strategy, String result, int count) {
+        if (count > 0) {
+            registry.counter("hmdp.cache.requests", "prefix", keyPrefix, "strategy", strategy, "result", result)
+                    .increment(count);
+        }
+    }
+
+    public <T> T recordRedis(String keyPrefix, Supplier<T> read) {
+        return timer("hmdp.cache.redis", "prefix", keyPrefix).record(read);
+    }
+
+    public <T> T recordDecode(String keyPrefix, Supplier<T> decode) {
+        return timer("hmdp.cache.decode", "prefix", keyPrefix).record(decode);
+    }
+
+    public <T> T recordRebuild(String keyPrefix, String strategy, Supplier<T> rebuild) {
+        return timer("hmdp.cache.rebuild", "prefix", keyPrefix, "strategy", strategy).record(rebuild);
+    }
+
+    public <T> T recordDb(String keyPrefix, String strategy, Supplier<T> loader) {
+        long begin = System.nanoTime();
+        String outcome = "failure";
+        try {
+            T t = loader.get();
+            outcome = "success";
+            return t;
+        } finally {
+            timer("hmdp.cache.db", "prefix", keyPrefix, "strategy", strategy, "outcome", outcome)
+                    .record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @param key 完整的key，按最后一个冒号之前的部分统计
+     */
+    public void recordCompress(String key, int rawBytes, int compressedBytes, long nanos) {
+        String prefix = prefixOf(key);
+        registry.counter("hmdp.cache.compress.bytes", "prefix", prefix, "stage", "raw").increment(rawBytes);
+        registry.counter("hmdp.cache.compress.bytes", "prefix", prefix, "stage", "compressed").increment(compressedBytes);
+        timer("hmdp.cache.compress", "prefix", prefix, "op", "compress").record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDecompress(String key, long nanos) {
+        timer("hmdp.cache.compress", "prefix", prefixOf(key), "op", "decompress").record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 影子key全量重建，name 为 geo、rank，指标名与原来一致：hmdp.&lt;name&gt;.rebuild
+     */
+    public void recordShadowRebuild(String name, long shops, long nanos) {
+        registry.counter("hmdp." + name + ".rebuild.shops").increment(shops);
+        registry.timer("hmdp." + name + ".rebuild").record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordResponse(String resource, String result) {
+        registry.counter("hmdp.response.cache", "resource", resource, "result", result).increment();
+    }
+
+    private static String prefixOf(String key) {
+        return StrUtil.subPre(key, key.lastIndexOf(':') + 1);
+    }
+
+    private Timer timer(String name, String... tags) {
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
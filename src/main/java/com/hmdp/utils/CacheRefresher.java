@@ -0,0 +1,162 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 逻辑过期缓存的提前刷新（refresh-ahead）。
+ * 记录每个key的访问次数，上次刷新以来访问次数达到阈值的热点key在逻辑过期前主动重建，没有达到的不再跟踪；
+ * 同一个key同时只会有一个刷新任务，刷新任务运行在有界、命名的线程池中。
+ * 多个节点同时刷新时由 CacheClient 的互斥锁去重，拿到锁后发现已经被刷新过的不再查询数据库。
+ */
+@Slf4j
+@Component
+public class CacheRefresher {
+    // 扫描间隔
+    private static final long SCAN_INTERVAL_MILLIS = 1000L;
+    // 距离逻辑过期多久开始提前刷新
+    private static final long REFRESH_AHEAD_MILLIS = 5000L;
+    // 超过该时间没有被访问的key视为冷数据，不再提前刷新
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // 最多跟踪的key数量
+    private static final int MAX_TRACKED_KEYS = 10000;
+
+    @Value("${hmdp.cache.refresh.min-accesses:10}")
+    private int minAccesses;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("cache-refresh-scheduler-", true));
+    private final ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor(
+            2, 10, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(1000),
+            new NamedThreadFactory("cache-refresh-", true),
+            new ThreadPoolExecutor.AbortPolicy());
+
+    @PostConstruct
+    private void init() {
+        scheduler.scheduleWithFixedDelay(this::scan, SCAN_INTERVAL_MILLIS, SCAN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        scheduler.shutdownNow();
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key        完整的key
+     * @param expireTime 当前缓存的逻辑过期时间
+     * @param loader     重建缓存，返回新的逻辑过期时间，没有重建时返回 null
+     */
+    public void recordAccess(String key, LocalDateTime expireTime, Supplier<LocalDateTime> loader) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            if (entries.size() >= MAX_TRACKED_KEYS) {
+                return;
+            }
+            entry = entries.computeIfAbsent(key, k -> new Entry(loader));
+        }
+        entry.lastAccess = now;
+        entry.expireAt = toMillis(expireTime);
+        entry.accesses.incrementAndGet();
+    }
+
+    /**
+     * 是否到了需要提前刷新的时间
+     */
+    public boolean isDue(LocalDateTime expireTime) {
+        return toMillis(expireTime) - System.currentTimeMillis() <= REFRESH_AHEAD_MILLIS;
+    }
+
+    /**
+     * 提交刷新任务，同一个key已有任务在执行时直接返回
+     */
+    public void refresh(String key, Supplier<LocalDateTime> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    LocalDateTime expireTime = loader.get();
+                    Entry entry = entries.get(key);
+                    if (entry != null && expireTime != null) {
+                        entry.expireAt = toMillis(expireTime);
+                    }
+                } catch (Exception e) {
+                    log.error("缓存刷新失败，key：{}", key, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+            log.warn("缓存刷新队列已满，跳过本次刷新，key：{}", key);
+        }
+    }
+
+    /**
+     * 不再跟踪该key，例如数据已被删除
+     */
+    public void remove(String key) {
+        entries.remove(key);
+    }
+
+    private void scan() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                if (now - entry.lastAccess > IDLE_MILLIS) {
+                    // 冷数据不再刷新
+                    entries.remove(e.getKey(), entry);
+                    continue;
+                }
+                if (entry.expireAt - now <= REFRESH_AHEAD_MILLIS) {
+                    if (entry.accesses.getAndSet(0) < minAccesses) {
+                        // 上次刷新以来访问次数不够，不是热点，过期后由读请求触发重建
+                        entries.remove(e.getKey(), entry);
+                        continue;
+                    }
+                    refresh(e.getKey(), entry.loader);
+                }
+            }
+        } catch (Exception e) {
+            log.error("扫描待刷新缓存异常", e);
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static class Entry {
+        private final Supplier<LocalDateTime> loader;
+        private volatile long lastAccess;
+        private volatile long expireAt;
+        // 上次刷新以来的访问次数
+        private final AtomicInteger accesses = new AtomicInteger();
+
+        private Entry(Supplier<LocalDateTime> loader) {
+            this.loader = loader;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 启动预热。
+ * 按 id 分批读取 tb_shop，用 pipeline 写入店铺缓存和 shop:geo:&lt;typeId&gt;，再预热店铺类型和进行中的秒杀库存。
+ * 预热在 ApplicationReadyEvent 中同步等待，Spring Boot 在该事件处理完之后才把就绪状态切换为 ACCEPTING_TRAFFIC，
+ * 所以就绪探针会一直等到预热完成或超时；超时后预热继续在后台执行。
+ */
+@Slf4j
+@Component
+public class CacheWarmUp {
+    @Value("${hmdp.cache.warm-up.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.cache.warm-up.batch-size:500}")
+    private int batchSize;
+
+    @Value("${hmdp.cache.warm-up.timeout-seconds:60}")
+    private long timeoutSeconds;
+
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private IShopTypeService shopTypeService;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("cache-warm-up-", true));
+
+    // 预热进度
+    private volatile String stage = "NOT_STARTED";
+    private final AtomicLong shopCount = new AtomicLong();
+    private volatile long beginTime;
+    private volatile long endTime;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        Future<?> future = executor.submit(this::warmUp);
+        try {
+            future.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            log.warn("缓存预热超过{}秒，继续在后台执行", timeoutSeconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("缓存预热失败", e.getCause());
+        }
+    }
+
+    /**
+     * 查询预热进度
+     */
+    public Map<String, Object> getProgress() {
+        long end = endTime > 0 ? endTime : System.currentTimeMillis();
+        long elapsed = beginTime > 0 ? end - beginTime : 0;
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("stage", stage);
+        progress.put("shopCount", shopCount.get());
+        progress.put("elapsedMillis", elapsed);
+        progress.put("shopsPerSecond", elapsed > 0 ? shopCount.get() * 1000 / elapsed : 0);
+        return progress;
+    }
+
+    private void warmUp() {
+        beginTime = System.currentTimeMillis();
+        try {
+            // 1.店铺缓存和坐标
+            stage = "SHOP";
+            warmUpShops();
+            // 2.店铺类型
+            stage = "SHOP_TYPE";
+            shopTypeService.show();
+            // 3.秒杀库存
+            stage = "SECKILL_STOCK";
+            warmUpSeckillStock();
+            stage = "DONE";
+        } catch (RuntimeException e) {
+            stage = "FAILED";
+            throw e;
+        } finally {
+            endTime = System.currentTimeMillis();
+        }
+        log.info("缓存预热完成，店铺：{}，耗时：{}ms", shopCount.get(), endTime - beginTime);
+    }
+
+    private void warmUpShops() {
+        long lastId = 0;
+        while (true) {
+            // 1.按id分批查询，避免深分页
+            List<Shop> shops = shopService.query()
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + batchSize)
+                    .list();
+            if (shops.isEmpty()) {
+                break;
+            }
+            // 2.写入店铺缓存
+            Map<Long, Shop> shopMap = new HashMap<>(shops.size());
+            Map<Long, List<RedisGeoCommands.GeoLocation<String>>> locationMap = new HashMap<>();
+            for (Shop shop : shops) {
+                shopMap.put(shop.getId(), shop);
+                if (shop.getX() != null && shop.getY() != null) {
+                    locationMap.computeIfAbsent(shop.getTypeId(), k -> new ArrayList<>())
+                            .add(new RedisGeoCommands.GeoLocation<>(shop.getId().toString(), new Point(shop.getX(), shop.getY())));
+                }
+            }
+            cacheClient.setBatch(CACHE_SHOP_KEY, shopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            // 3.按类型写入坐标
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (Map.Entry<Long, List<RedisGeoCommands.GeoLocation<String>>> entry : locationMap.entrySet()) {
+                    stringConnection.geoAdd(SHOP_GEO_KEY + entry.getKey(), entry.getValue());
+                }
+                return null;
+            });
+            lastId = shops.get(shops.size() - 1).getId();
+            long count = shopCount.addAndGet(shops.size());
+            long elapsed = Math.max(System.currentTimeMillis() - beginTime, 1);
+            log.info("缓存预热中，已加载店铺：{}，速度：{}/s", count, count * 1000 / elapsed);
+        }
+    }
+
+    private void warmUpSeckillStock() {
+        List<SeckillVoucher> vouchers = seckillVoucherService.query()
+                .gt("end_time", LocalDateTime.now())
+                .list();
+        // Redis中的库存是准确值，数据库是异步扣减的，所以只补充不存在的key
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (SeckillVoucher voucher : vouchers) {
+                stringConnection.setNX(SECKILL_STOCK_KEY + voucher.getVoucherId(), voucher.getStock().toString());
+            }
+            return null;
+        });
+        log.info("秒杀库存预热完成，优惠券：{}", vouchers.size());
+    }
+}
@@ -0,0 +1,157 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 熔断器。
+ * 连续失败（异常或慢调用）达到阈值后打开，打开期间直接拒绝调用；
+ * 打开一段时间后进入半开状态，只放行一个探测调用，成功则关闭，失败则重新打开。
+ */
+@Slf4j
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // 一次调用得到的许可：拒绝、普通调用、半开状态下的探测调用
+    private enum Permit {
+        REJECTED, NORMAL, PROBE
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final long slowCallMillis;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private volatile long openedAt;
+
+    private final LongAdder successCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * @param name             名称
+     * @param failureThreshold 连续失败多少次后打开
+     * @param openMillis       打开后多久进入半开状态
+     * @param slowCallMillis   超过该耗时的调用视为失败
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openMillis, long slowCallMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.slowCallMillis = slowCallMillis;
+    }
+
+    /**
+     * 在熔断器保护下执行调用
+     *
+     * @throws CircuitBreakerOpenException 熔断器打开时
+     */
+    public <T> T execute(Supplier<T> supplier) {
+        Permit permit = tryAcquire();
+        if (permit == Permit.REJECTED) {
+            rejectedCount.increment();
+            throw new CircuitBreakerOpenException(name);
+        }
+        boolean probe = permit == Permit.PROBE;
+        long begin = System.currentTimeMillis();
+        try {
+            T result;
+            try {
+                result = supplier.get();
+            } catch (RuntimeException | Error e) {
+                onFailure(probe);
+                throw e;
+            }
+            if (System.currentTimeMillis() - begin > slowCallMillis) {
+                // 慢调用，结果照常返回，但计为失败
+                onFailure(probe);
+            } else {
+                onSuccess(probe);
+            }
+            return result;
+        } finally {
+            // 只有探测调用自己可以结束探测，无论以什么方式结束
+            if (probe) {
+                probing.set(false);
+            }
+        }
+    }
+
+    private Permit tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return Permit.NORMAL;
+        }
+        if (current == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                return Permit.REJECTED;
+            }
+            if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                log.info("熔断器进入半开状态：{}", name);
+            }
+        }
+        // 半开状态只放行一个探测调用
+        return probing.compareAndSet(false, true) ? Permit.PROBE : Permit.REJECTED;
+    }
+
+    /**
+     * 只有探测调用可以关闭熔断器；打开之前开始、打开之后才结束的调用不改变状态
+     */
+    private void onSuccess(boolean probe) {
+        successCount.increment();
+        if (probe) {
+            consecutiveFailures.set(0);
+            if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+                log.info("熔断器关闭：{}", name);
+            }
+        } else if (state.get() == State.CLOSED) {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    private void onFailure(boolean probe) {
+        failureCount.increment();
+        if (probe) {
+            open();
+        } else if (state.get() == State.CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open();
+        }
+    }
+
+    private void open() {
+        openedAt = System.currentTimeMillis();
+        if (state.getAndSet(State.OPEN) != State.OPEN) {
+            log.warn("熔断器打开：{}", name);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public long getSuccessCount() {
+        return successCount.sum();
+    }
+
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+}
@@ -0,0 +1,10 @@
+package com.hmdp.utils;
+
+/**
+ * 熔断器打开时拒绝调用
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+    public CircuitBreakerOpenException(String name) {
+        super("熔断器已打开：" + name);
+    }
+}
@@ -0,0 +1,34 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按 key 前缀管理数据库加载的熔断器
+ */
+@Component
+public class CircuitBreakerRegistry {
+    @Value("${hmdp.cache.breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${hmdp.cache.breaker.open-seconds:10}")
+    private long openSeconds;
+
+    @Value("${hmdp.cache.breaker.slow-call-millis:1000}")
+    private long slowCallMillis;
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    public CircuitBreaker of(String keyPrefix) {
+        return breakers.computeIfAbsent(keyPrefix,
+                name -> new CircuitBreaker(name, failureThreshold, openSeconds * 1000, slowCallMillis));
+    }
+
+    public Collection<CircuitBreaker> getAll() {
+        return breakers.values();
+    }
+}
@@ -0,0 +1,73 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch，用固定内存估算每个key的访问次数，估算值只会偏大不会偏小，线程安全。
+ * 定期调用 decay 把所有计数减半，使估算值反映最近一段时间的访问频率。
+ */
+public class CountMinSketch {
+    private final int depth;
+    private final int width;
+    private final AtomicLongArray counters;
+
+    public CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        this.width = width;
+        this.counters = new AtomicLongArray(depth * width);
+    }
+
+    /**
+     * 增加计数
+     *
+     * @return 增加后的估算值
+     */
+    public long add(String key, long count) {
+        long h1 = mix(key.hashCode());
+        long h2 = mix(h1);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            long value = counters.addAndGet(index(i, h1 + i * h2), count);
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    public long estimate(String key) {
+        long h1 = mix(key.hashCode());
+        long h2 = mix(h1);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters.get(index(i, h1 + i * h2)));
+        }
+        return min;
+    }
+
+    /**
+     * 所有计数减半
+     */
+    public void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            long old;
+            do {
+                old = counters.get(i);
+            } while (old != 0 && !counters.compareAndSet(i, old, old >>> 1));
+        }
+    }
+
+    private int index(int row, long hash) {
+        return row * width + (int) ((hash & Long.MAX_VALUE) % width);
+    }
+
+    /**
+     * murmur3 的 64 位混淆函数
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
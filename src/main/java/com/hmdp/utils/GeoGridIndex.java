@@ -0,0 +1,157 @@
+package com.hmdp.utils;
+
+import java.util.*;
+
+/**
+ * 基于经纬度网格的最近邻索引，坐标保存在基本类型数组中，创建后不可修改。
+ * 查询时从中心格子开始一圈一圈向外扩展，已经找到足够的结果并且下一圈不可能更近时停止；
+ * 游标查询跳过一定比游标更近的内圈，每页只扫描游标附近的几圈格子。
+ */
+public class GeoGridIndex {
+    // 与 Redis 计算距离使用的地球半径一致，保证和 GEOSEARCH 的结果相同
+    private static final double EARTH_RADIUS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = Math.PI / 180 * EARTH_RADIUS;
+    private static final double SQRT2 = Math.sqrt(2);
+    // 格子大小，约1.1公里
+    private static final double CELL_DEGREES = 0.01;
+
+    private final long[] ids;
+    private final double[] xs;
+    private final double[] ys;
+    // 格子编号 -> 点的下标
+    private final Map<Long, int[]> cells;
+
+    /**
+     * @param points id -> {经度, 纬度}
+     */
+    public GeoGridIndex(Map<Long, double[]> points) {
+        int size = points.size();
+        ids = new long[size];
+        xs = new double[size];
+        ys = new double[size];
+        Map<Long, List<Integer>> grid = new HashMap<>();
+        int i = 0;
+        for (Map.Entry<Long, double[]> entry : points.entrySet()) {
+            ids[i] = entry.getKey();
+            xs[i] = entry.getValue()[0];
+            ys[i] = entry.getValue()[1];
+            grid.computeIfAbsent(cellKey(cellOf(xs[i]), cellOf(ys[i])), k -> new ArrayList<>()).add(i);
+            i++;
+        }
+        cells = new HashMap<>(grid.size() * 2);
+        for (Map.Entry<Long, List<Integer>> entry : grid.entrySet()) {
+            cells.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * 按距离从近到远查询，距离相同时按id排序
+     *
+     * @param x             经度
+     * @param y             纬度
+     * @param maxDistance   最大距离，单位米
+     * @param afterDistance 游标中的距离，只返回排在游标之后的点，第一页传 -1
+     * @param afterId       游标中的id
+     * @param limit         最多返回的数量
+     * @return 距离升序的结果
+     */
+    public List<Hit> nearest(double x, double y, double maxDistance, double afterDistance, long afterId, int limit) {
+        if (limit <= 0 || ids.length == 0) {
+            return Collections.emptyList();
+        }
+        // 格子的最小边长（经度方向随纬度变短，多留1度余量）和最大边长，用于估算每一圈的距离范围
+        double latMeters = CELL_DEGREES * METERS_PER_DEGREE;
+        double lonMeters = latMeters * Math.cos(Math.toRadians(Math.min(89, Math.abs(y) + 1)));
+        double minCellMeters = Math.min(latMeters, lonMeters);
+        // 第 r 圈中的点距离不超过 (r + 1) * sqrt2 * latMeters，比游标更近的圈可以直接跳过
+        int startRing = afterDistance < 0 ? 0 : Math.max(0, (int) (afterDistance / (SQRT2 * latMeters)) - 1);
+        int maxRing = (int) Math.ceil(maxDistance / minCellMeters) + 1;
+        int cx = cellOf(x);
+        int cy = cellOf(y);
+        // 大顶堆，保留最近的 limit 个
+        PriorityQueue<Hit> heap = new PriorityQueue<>(limit + 1, Comparator.reverseOrder());
+        for (int r = startRing; r <= maxRing; r++) {
+            // 第 r 圈中的点距离至少为 (r - 1) * minCellMeters
+            if (heap.size() == limit && (r - 1) * minCellMeters > heap.peek().distance) {
+                break;
+            }
+            for (int i = -r; i <= r; i++) {
+                for (int j = -r; j <= r; j++) {
+                    if (Math.max(Math.abs(i), Math.abs(j)) != r) {
+                        continue;
+                    }
+                    int[] indexes = cells.get(cellKey(cx + i, cy + j));
+                    if (indexes == null) {
+                        continue;
+                    }
+                    for (int index : indexes) {
+                        double distance = distance(x, y, xs[index], ys[index]);
+                        if (distance > maxDistance) {
+                            continue;
+                        }
+                        Hit hit = new Hit(ids[index], distance);
+                        if (afterDistance >= 0 && hit.compareTo(new Hit(afterId, afterDistance)) <= 0) {
+                            continue;
+                        }
+                        if (heap.size() < limit) {
+                            heap.offer(hit);
+                        } else if (hit.compareTo(heap.peek()) < 0) {
+                            heap.poll();
+                            heap.offer(hit);
+                        }
+                    }
+                }
+            }
+        }
+        List<Hit> result = new ArrayList<>(heap);
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * 与 Redis 相同的 haversine 公式，单位米
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2.0 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    private static int cellOf(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    private static long cellKey(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+
+    public static class Hit implements Comparable<Hit> {
+        private final long id;
+        private final double distance;
+
+        public Hit(long id, double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+
+        @Override
+        public int compareTo(Hit o) {
+            int c = Double.compare(distance, o.distance);
+            return c != 0 ? c : Long.compare(id, o.id);
+        }
+    }
+}
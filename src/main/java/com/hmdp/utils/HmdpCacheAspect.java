@@ -0,0 +1,119 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.service.ICacheOutboxService;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * HmdpCacheable / HmdpCacheEvict 的实现。
+ * 只对通过 Spring 代理调用的方法生效，同一个类内部的自调用不会走缓存。
+ */
+@Aspect
+@Component
+public class HmdpCacheAspect {
+    private final ExpressionParser parser = new SpelExpressionParser();
+    private final ParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+
+    @Around("@annotation(cacheable)")
+    @SuppressWarnings("unchecked")
+    public Object cacheable(ProceedingJoinPoint joinPoint, HmdpCacheable cacheable) throws Throwable {
+        Long id = evaluate(cacheable.key(), joinPoint, null);
+        if (id == null) {
+            // id为空时不缓存
+            return joinPoint.proceed();
+        }
+        Class<Object> type = (Class<Object>) ClassUtils.resolvePrimitiveIfNecessary(
+                ((MethodSignature) joinPoint.getSignature()).getReturnType());
+        // 逻辑过期的重建在刷新线程中执行，proceed 会复制一次调用，可以在其它线程重复执行
+        Function<Long, Object> dbFallback = ignored -> proceed(joinPoint);
+        String prefix = cacheable.prefix();
+        long ttl = cacheable.ttl();
+        Object value;
+        switch (cacheable.strategy()) {
+            case MUTEX:
+                value = cacheClient.queryWithMutex(prefix, id, type, dbFallback, ttl, cacheable.unit());
+                break;
+            case LOGICAL_EXPIRE:
+                value = cacheClient.queryWithLogicalExpire(prefix, id, type, dbFallback, ttl, cacheable.unit());
+                break;
+            default:
+                value = cacheClient.queryWithPassThrough(prefix, id, type, dbFallback, ttl, cacheable.unit());
+        }
+        return withElementType(value, cacheable.elementType());
+    }
+
+    /**
+     * 把 Result 中的列表转换为声明的元素类型。
+     * 总是返回新的 Result 和新的元素，调用方修改元素不会影响本地缓存中的对象
+     */
+    private static Object withElementType(Object value, Class<?> elementType) {
+        if (elementType == Void.class || !(value instanceof Result)) {
+            return value;
+        }
+        Result result = (Result) value;
+        if (!(result.getData() instanceof Collection)) {
+            return value;
+        }
+        return new Result(result.getSuccess(), result.getErrorMsg(),
+                BeanUtil.copyToList((Collection<?>) result.getData(), elementType), result.getTotal());
+    }
+
+    /**
+     * 方法在事务中时，失效记录与业务数据一起提交；
+     * 切面在事务外执行时方法已经提交，失效记录单独写入并立即投递，两种顺序都不会在提交前删除缓存
+     */
+    @AfterReturning(pointcut = "@annotation(evict)", returning = "result")
+    public void evict(JoinPoint joinPoint, HmdpCacheEvict evict, Object result) {
+        Long id = evaluate(evict.key(), joinPoint, result);
+        if (id != null) {
+            cacheOutboxService.record(evict.prefix() + id);
+        }
+    }
+
+    private Long evaluate(String key, JoinPoint joinPoint, Object result) {
+        Method method = AopUtils.getMostSpecificMethod(
+                ((MethodSignature) joinPoint.getSignature()).getMethod(), joinPoint.getTarget().getClass());
+        MethodBasedEvaluationContext context =
+                new MethodBasedEvaluationContext(null, method, joinPoint.getArgs(), nameDiscoverer);
+        context.setVariable("result", result);
+        return expressions.computeIfAbsent(key, parser::parseExpression).getValue(context, Long.class);
+    }
+
+    private static Object proceed(ProceedingJoinPoint joinPoint) {
+        try {
+            return joinPoint.proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
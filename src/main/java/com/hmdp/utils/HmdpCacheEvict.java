@@ -0,0 +1,23 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.*;
+
+/**
+ * 方法成功返回后失效缓存。
+ * 失效记录写入缓存失效发件箱，方法在事务中时与业务数据一起提交，提交后才删除 Redis 缓存并广播清除本地缓存。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface HmdpCacheEvict {
+
+    /**
+     * key前缀，与 HmdpCacheable 的 prefix 一致
+     */
+    String prefix();
+
+    /**
+     * 计算id的 SpEL 表达式，可以用参数名、#p0 或 #result
+     */
+    String key();
+}
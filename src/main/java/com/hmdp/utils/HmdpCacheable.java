@@ -0,0 +1,56 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 声明式缓存，由 HmdpCacheAspect 调用 CacheClient 实现。
+ * 方法的返回值就是缓存的对象，按方法的返回类型反序列化；方法本身作为数据库查询，
+ * 返回 null 表示数据不存在，穿透和互斥锁策略下会写入空值。
+ * <pre>
+ * &#64;HmdpCacheable(prefix = CACHE_USER_INFO_KEY, key = "#userId", ttl = CACHE_USER_INFO_TTL)
+ * public UserInfo queryByUserId(Long userId)
+ * </pre>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface HmdpCacheable {
+
+    /**
+     * key前缀，例如 cache:shop:
+     */
+    String prefix();
+
+    /**
+     * 计算id的 SpEL 表达式，可以用参数名或 #p0，结果必须能转换为 Long
+     */
+    String key();
+
+    long ttl() default 30L;
+
+    TimeUnit unit() default TimeUnit.MINUTES;
+
+    Strategy strategy() default Strategy.PASS_THROUGH;
+
+    /**
+     * 返回类型为 Result 且 data 是列表时，列表元素的类型，例如 Voucher.class。
+     * 缓存中的 JSON 反序列化后元素是 Map，切面按这个类型转换后再返回；默认不转换
+     */
+    Class<?> elementType() default Void.class;
+
+    enum Strategy {
+        /**
+         * 缓存空值防止穿透
+         */
+        PASS_THROUGH,
+        /**
+         * 互斥锁重建，适合重建代价高的热点数据
+         */
+        MUTEX,
+        /**
+         * 逻辑过期，返回旧数据并异步重建，需要提前预热，未预热的key返回 null
+         */
+        LOGICAL_EXPIRE
+    }
+}
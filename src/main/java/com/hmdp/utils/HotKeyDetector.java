@@ -0,0 +1,107 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热点key探测。
+ * 按采样率把key的访问记录到会定期衰减的 Count-Min Sketch 中，
+ * 估算访问次数超过阈值的key被标记为热点，由 LocalCache 在本地保存一份短期副本；
+ * 访问量降到阈值一半以下时取消热点标记并清除本地副本。
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 1 << 14;
+
+    @Value("${hmdp.cache.hot-key.sample-rate:0.1}")
+    private double sampleRate;
+
+    // 一个衰减周期内的访问次数阈值
+    @Value("${hmdp.cache.hot-key.threshold:500}")
+    private long threshold;
+
+    @Value("${hmdp.cache.hot-key.decay-seconds:10}")
+    private long decaySeconds;
+
+    private final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+    // 热点key -> 估算的访问次数
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("hot-key-decay-", true));
+    private final LocalCache localCache;
+
+    public HotKeyDetector(LocalCache localCache) {
+        this.localCache = localCache;
+    }
+
+    @PostConstruct
+    private void init() {
+        scheduler.scheduleWithFixedDelay(this::decay, decaySeconds, decaySeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 记录一次访问
+     */
+    public void record(String key) {
+        if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        long count = (long) (sketch.add(key, 1) / sampleRate);
+        if (count >= threshold && hotKeys.put(key, count) == null) {
+            log.info("发现热点key：{}，估算访问次数：{}", key, count);
+        }
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * 当前热点key，按访问次数降序
+     */
+    public Map<String, Long> getHotKeys() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        hotKeys.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(e -> result.put(e.getKey(), e.getValue()));
+        return result;
+    }
+
+    private void decay() {
+        try {
+            sketch.decay();
+            for (String key : hotKeys.keySet()) {
+                long count = (long) (sketch.estimate(key) / sampleRate);
+                if (count < threshold / 2) {
+                    // 热度下降，取消热点并清除本地副本
+                    hotKeys.remove(key);
+                    localCache.invalidateHot(key);
+                    log.info("热点key降级：{}", key);
+                } else {
+                    hotKeys.put(key, count);
+                }
+            }
+        } catch (Exception e) {
+            log.error("热点key衰减异常", e);
+        }
+    }
+}
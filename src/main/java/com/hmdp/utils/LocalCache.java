@@ -0,0 +1,120 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 进程内一级缓存（L1），位于 Redis（L2）之前。
+ * 每个 key 前缀对应一个独立的 Caffeine 缓存，容量有上限，按 W-TinyLFU 淘汰，过期时间按前缀配置。
+ * 缓存中的对象会被多个请求共享，调用方只能读取，不能修改。
+ */
+@Slf4j
+@Component
+public class LocalCache implements MessageListener {
+    private final Map<String, Cache<String, Object>> caches = new ConcurrentHashMap<>();
+    // 热点key的本地副本，保存 Redis 中的原始值，不区分前缀，过期时间很短
+    private final Cache<String, Object> hotValues = Caffeine.newBuilder()
+            .maximumSize(HOT_KEY_LOCAL_SIZE)
+            .expireAfterWrite(HOT_KEY_LOCAL_TTL, TimeUnit.SECONDS)
+            .build();
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public LocalCache(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    private void init() {
+        register(CACHE_SHOP_KEY, CACHE_SHOP_LOCAL_SIZE, CACHE_SHOP_LOCAL_TTL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 为指定前缀开启本地缓存
+     *
+     * @param keyPrefix   key前缀
+     * @param maximumSize 最大条目数
+     * @param ttl         写入后的存活时间
+     * @param unit        时间单位
+     */
+    public void register(String keyPrefix, long maximumSize, long ttl, TimeUnit unit) {
+        caches.put(keyPrefix, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, unit)
+                .build());
+    }
+
+    public <R> R get(String keyPrefix, String key, Class<R> type) {
+        Cache<String, Object> cache = caches.get(keyPrefix);
+        if (cache == null) {
+            return null;
+        }
+        Object value = cache.getIfPresent(key);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    public void put(String keyPrefix, String key, Object value) {
+        Cache<String, Object> cache = caches.get(keyPrefix);
+        if (cache == null || value == null) {
+            return;
+        }
+        cache.put(key, value);
+    }
+
+    public Object getHot(String key) {
+        return hotValues.getIfPresent(key);
+    }
+
+    public void putHot(String key, Object value) {
+        if (value != null) {
+            hotValues.put(key, value);
+        }
+    }
+
+    public void invalidateHot(String key) {
+        hotValues.invalidate(key);
+    }
+
+    /**
+     * 只清除本节点的本地缓存
+     *
+     * @param key 完整的key
+     */
+    public void invalidateLocal(String key) {
+        hotValues.invalidate(key);
+        for (Map.Entry<String, Cache<String, Object>> entry : caches.entrySet()) {
+            if (key.startsWith(entry.getKey())) {
+                entry.getValue().invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * 清除本节点的本地缓存，并通过 pub/sub 通知其它节点清除
+     *
+     * @param key 完整的key
+     */
+    public void invalidate(String key) {
+        invalidateLocal(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到缓存失效通知，key：{}", key);
+        invalidateLocal(key);
+    }
+}
@@ -0,0 +1,456 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.RuntimeUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.OrderStreamProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.connection.DefaultStringRedisConnection;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀订单消息队列的消费者池。
+ * 每个消费者一个线程、一个独立的 Redis 连接（不占用共享的 Lettuce 连接池，阻塞读取不会影响其它请求），
+ * 名称为 主机名-实例id-序号，实例id 取 spring.application.instance-id，没有配置时用进程号，保证同一台机器上的多个进程不会重名；
+ * 显式配置了实例id时重启后沿用原来的名称，先处理自己名下未确认的消息，否则旧名称下的消息由 recover 认领；
+ * 缩容或下线后留下的、没有 pending 消息且长时间空闲的消费者由 recover 从消费者组中删除。
+ * 每次读取 batchSize 条，整批写入数据库（失败时逐条处理），处理成功的消息一次 XACK；失败的消息留在 pending 中。
+ * 另外定时检查整个消费者组的 pending 列表：投递后长时间未确认的消息（消费者宕机或处理失败）用 XCLAIM 认领后重新处理，
+ * 每多投递一次等待时间翻倍；投递次数超过上限的转入死信队列 stream.orders.dlq 并确认。
+ */
+@Slf4j
+@Component
+public class OrderStreamConsumers {
+    @Resource
+    private OrderStreamProperties properties;
+    @Resource
+    private RedisProperties redisProperties;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    // 空闲超过这个时间且没有 pending 消息的消费者从消费者组中删除
+    private static final long STALE_CONSUMER_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // 读取失败后的最长等待时间
+    private static final long MAX_BACKOFF_MILLIS = 30000L;
+
+    @Value("${spring.application.instance-id:}")
+    private String instanceId;
+
+    private String consumerPrefix;
+    private final ExecutorService executor = Executors.newCachedThreadPool(new NamedThreadFactory("order-consumer-", true));
+    private final ScheduledExecutorService recoverScheduler =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("order-recover-", true));
+    // 正在运行的消费者，下标即序号，只在 synchronized 方法中修改
+    private final List<Worker> workers = new ArrayList<>();
+    private LettuceConnectionFactory connectionFactory;
+    // pending 消息数和其中最早一条进入队列的时间
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong pendingAgeMillis = new AtomicLong();
+    private Counter recovered;
+    private Counter recoverFailure;
+    private Counter dead;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void init() {
+        consumerPrefix = NetUtil.getLocalHostName() + "-"
+                + (StrUtil.isNotBlank(instanceId) ? instanceId : String.valueOf(RuntimeUtil.getPid())) + "-";
+        // 1.独立的连接工厂，不使用连接池，每个消费者一个连接
+        connectionFactory = createConnectionFactory();
+        connectionFactory.setShareNativeConnection(false);
+        connectionFactory.afterPropertiesSet();
+        // 2.创建消费者组，队列不存在时一起创建
+        StringRedisConnection connection = new DefaultStringRedisConnection(connectionFactory.getConnection());
+        try {
+            connection.xGroupCreate(ORDER_STREAM_KEY, ReadOffset.from("0"), ORDER_STREAM_GROUP, true);
+        } catch (Exception e) {
+            log.debug("消费者组 {} 已存在，跳过创建", ORDER_STREAM_GROUP);
+        } finally {
+            connection.close();
+        }
+        // 3.启动消费者
+        setConcurrency(properties.getConcurrency());
+        // 4.定时认领超时未确认的消息
+        String recoverName = consumerPrefix + "recover";
+        recovered = meterRegistry.counter("hmdp.order.stream.messages", "consumer", recoverName, "result", "success");
+        recoverFailure = meterRegistry.counter("hmdp.order.stream.messages", "consumer", recoverName, "result", "failure");
+        dead = meterRegistry.counter("hmdp.order.stream.dead");
+        meterRegistry.gauge("hmdp.order.stream.pending", pendingCount);
+        meterRegistry.gauge("hmdp.order.stream.pending.age", pendingAgeMillis);
+        recoverScheduler.scheduleWithFixedDelay(() -> recover(recoverName),
+                properties.getRecoverIntervalMillis(), properties.getRecoverIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private synchronized void destroy() throws InterruptedException {
+        for (Worker worker : workers) {
+            worker.running = false;
+        }
+        workers.clear();
+        recoverScheduler.shutdownNow();
+        executor.shutdown();
+        // 等待正在处理的一批消息完成
+        executor.awaitTermination(properties.getBlockMillis() + 5000L, TimeUnit.MILLISECONDS);
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    /**
+     * 按 spring.redis 的配置创建连接工厂，支持单机、哨兵和集群，以及 SSL、超时和客户端名称
+     */
+    private LettuceConnectionFactory createConnectionFactory() {
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = LettuceClientConfiguration.builder();
+        if (redisProperties.isSsl()) {
+            builder.useSsl();
+        }
+        // 命令超时必须大于阻塞读取的时间
+        long timeout = redisProperties.getTimeout() == null ? 0 : redisProperties.getTimeout().toMillis();
+        builder.commandTimeout(Duration.ofMillis(Math.max(timeout, properties.getBlockMillis() + 1000L)));
+        // 这个版本的 spring.redis 没有单独的连接超时，与 Spring Boot 的 Lettuce 配置一样使用 timeout
+        if (redisProperties.getTimeout() != null) {
+            builder.clientOptions(ClientOptions.builder()
+                    .socketOptions(SocketOptions.builder().connectTimeout(redisProperties.getTimeout()).build())
+                    .build());
+        }
+        if (StrUtil.isNotBlank(redisProperties.getClientName())) {
+            builder.clientName(redisProperties.getClientName());
+        }
+        LettuceClientConfiguration clientConfiguration = builder.build();
+        RedisProperties.Sentinel sentinel = redisProperties.getSentinel();
+        if (sentinel != null) {
+            RedisSentinelConfiguration configuration =
+                    new RedisSentinelConfiguration(sentinel.getMaster(), new HashSet<>(sentinel.getNodes()));
+            configuration.setDatabase(redisProperties.getDatabase());
+            configuration.setPassword(RedisPassword.of(redisProperties.getPassword()));
+            configuration.setSentinelPassword(RedisPassword.of(sentinel.getPassword()));
+            return new LettuceConnectionFactory(configuration, clientConfiguration);
+        }
+        RedisProperties.Cluster cluster = redisProperties.getCluster();
+        if (cluster != null) {
+            RedisClusterConfiguration configuration = new RedisClusterConfiguration(cluster.getNodes());
+            if (cluster.getMaxRedirects() != null) {
+                configuration.setMaxRedirects(cluster.getMaxRedirects());
+            }
+            configuration.setPassword(RedisPassword.of(redisProperties.getPassword()));
+            return new LettuceConnectionFactory(configuration, clientConfiguration);
+        }
+        RedisStandaloneConfiguration configuration =
+                new RedisStandaloneConfiguration(redisProperties.getHost(), redisProperties.getPort());
+        configuration.setDatabase(redisProperties.getDatabase());
+        configuration.setPassword(RedisPassword.of(redisProperties.getPassword()));
+        return new LettuceConnectionFactory(configuration, clientConfiguration);
+    }
+
+    /**
+     * 调整本实例的消费者数量，减少时被停止的消费者处理完当前一批后退出
+     *
+     * @return 调整后的数量
+     */
+    public synchronized int setConcurrency(int concurrency) {
+        concurrency = Math.max(concurrency, 0);
+        while (workers.size() < concurrency) {
+            Worker worker = new Worker(consumerPrefix + workers.size());
+            workers.add(worker);
+            executor.execute(worker);
+        }
+        while (workers.size() > concurrency) {
+            workers.remove(workers.size() - 1).running = false;
+        }
+        properties.setConcurrency(concurrency);
+        log.info("订单消费者数量：{}", concurrency);
+        return concurrency;
+    }
+
+    /**
+     * 各个消费者处理的消息数
+     */
+    public synchronized List<Map<String, Object>> getStats() {
+        List<Map<String, Object>> stats = new ArrayList<>(workers.size());
+        for (Worker worker : workers) {
+            Map<String, Object> stat = new LinkedHashMap<>();
+            stat.put("consumer", worker.name);
+            stat.put("success", (long) worker.success.count());
+            stat.put("failure", (long) worker.failure.count());
+            stat.put("batches", worker.batchTimer.count());
+            stat.put("meanBatchMillis", worker.batchTimer.mean(TimeUnit.MILLISECONDS));
+            stats.add(stat);
+        }
+        return stats;
+    }
+
+    /**
+     * 先整批写入，失败时逐条处理
+     *
+     * @return 是否全部处理成功
+     */
+    private boolean handle(StringRedisConnection connection, List<StringRecord> records,
+                           String name, Counter success, Counter failure) {
+        List<RecordId> acked = new ArrayList<>(records.size());
+        List<StringRecord> orderRecords = new ArrayList<>(records.size());
+        List<VoucherOrder> orders = new ArrayList<>(records.size());
+        for (StringRecord record : records) {
+            Map<String, String> values = record.getValue();
+            if (values == null || values.isEmpty()) {
+                // 消息已经被删除，只剩 pending 记录
+                acked.add(record.getId());
+                continue;
+            }
+            orderRecords.add(record);
+            orders.add(BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true));
+        }
+        // 1.多条订单时整批写入，一个事务、每张券一次扣减
+        boolean batched = false;
+        if (orders.size() > 1) {
+            try {
+                voucherOrderService.createVoucherOrders(orders);
+                for (StringRecord record : orderRecords) {
+                    acked.add(record.getId());
+                }
+                success.increment(orders.size());
+                batched = true;
+            } catch (Exception e) {
+                log.warn("消费者 {} 批量写入 {} 条订单失败，改为逐条处理", name, orders.size(), e);
+            }
+        }
+        // 2.只有一条或整批失败时逐条处理
+        if (!batched) {
+            for (int i = 0; i < orders.size(); i++) {
+                StringRecord record = orderRecords.get(i);
+                try {
+                    voucherOrderService.handleVoucherOrder(orders.get(i));
+                    acked.add(record.getId());
+                    success.increment();
+                } catch (Exception e) {
+                    log.error("消费者 {} 处理订单消息 {} 失败", name, record.getId(), e);
+                    failure.increment();
+                }
+            }
+        }
+        if (!acked.isEmpty()) {
+            connection.xAck(ORDER_STREAM_KEY, ORDER_STREAM_GROUP, acked.toArray(new RecordId[0]));
+        }
+        return acked.size() == records.size();
+    }
+
+    /**
+     * 检查消费者组的 pending 列表，认领超时未确认的消息重新处理，投递次数超过上限的转入死信队列
+     */
+    private void recover(String recoverName) {
+        StringRedisConnection connection = new DefaultStringRedisConnection(connectionFactory.getConnection());
+        try {
+            // 1.pending 数量和最早一条消息的等待时间，消息id的前半部分是写入时的毫秒时间戳
+            PendingMessagesSummary summary = connection.xPending(ORDER_STREAM_KEY, ORDER_STREAM_GROUP);
+            long total = summary == null ? 0 : summary.getTotalPendingMessages();
+            pendingCount.set(total);
+            if (total == 0) {
+                pendingAgeMillis.set(0);
+                removeStaleConsumers(connection);
+                return;
+            }
+            long oldest = RecordId.of(summary.minMessageId()).getTimestamp();
+            pendingAgeMillis.set(Math.max(System.currentTimeMillis() - oldest, 0));
+            // 2.分页遍历整个 pending 列表，每页认领一次，超过时间预算时留到下一轮
+            long deadline = System.currentTimeMillis() + properties.getRecoverIntervalMillis() / 2;
+            String start = "-";
+            while (true) {
+                PendingMessages page = connection.xPending(ORDER_STREAM_KEY, ORDER_STREAM_GROUP,
+                        Range.rightUnbounded(Range.Bound.inclusive(start)), (long) properties.getRecoverBatchSize());
+                if (page == null || page.isEmpty()) {
+                    break;
+                }
+                recoverPage(connection, page, recoverName);
+                if (page.size() < properties.getRecoverBatchSize() || System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+                // 下一页从最后一条之后开始，id 的序号加一，不依赖 Redis 6.2 的开区间语法
+                RecordId last = page.get(page.size() - 1).getId();
+                start = last.getTimestamp() + "-" + (last.getSequence() + 1);
+            }
+            // 3.删除已经下线的消费者
+            removeStaleConsumers(connection);
+        } catch (Exception e) {
+            log.error("检查订单消息 pending 列表失败", e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * 认领一页 pending 消息中等待时间足够的，投递 n 次的消息至少等待 claimIdleMillis * 2^(n-1)
+     */
+    private void recoverPage(StringRedisConnection connection, PendingMessages page, String recoverName) {
+        // 1.找出等待时间足够的消息
+        Map<String, Long> deliveries = new HashMap<>();
+        long minIdle = Long.MAX_VALUE;
+        for (PendingMessage message : page) {
+            long count = message.getTotalDeliveryCount();
+            long idle = properties.getClaimIdleMillis() << Math.min(Math.max(count - 1, 0), 10);
+            if (message.getElapsedTimeSinceLastDelivery().toMillis() >= idle) {
+                deliveries.put(message.getIdAsString(), count);
+                minIdle = Math.min(minIdle, idle);
+            }
+        }
+        if (deliveries.isEmpty()) {
+            return;
+        }
+        // 2.认领，XCLAIM 带 min-idle-time，多个实例同时认领时只有一个能成功
+        List<StringRecord> claimed = connection.xClaim(ORDER_STREAM_KEY, ORDER_STREAM_GROUP, recoverName,
+                RedisStreamCommands.XClaimOptions.minIdle(Duration.ofMillis(minIdle))
+                        .ids(deliveries.keySet().toArray(new String[0])));
+        if (claimed == null || claimed.isEmpty()) {
+            return;
+        }
+        // 3.超过投递次数的转入死信队列，其余的重新处理
+        List<StringRecord> retries = new ArrayList<>(claimed.size());
+        for (StringRecord record : claimed) {
+            Long count = deliveries.get(record.getId().getValue());
+            if (count != null && count >= properties.getMaxDeliveries()) {
+                deadLetter(connection, record, count);
+            } else {
+                retries.add(record);
+            }
+        }
+        if (!retries.isEmpty()) {
+            log.info("认领 {} 条超时未确认的订单消息", retries.size());
+            handle(connection, retries, recoverName, recovered, recoverFailure);
+        }
+    }
+
+    /**
+     * 删除没有 pending 消息、空闲超过 STALE_CONSUMER_MILLIS 的消费者，本实例正在运行的除外
+     */
+    private void removeStaleConsumers(StringRedisConnection connection) {
+        Set<String> running = new HashSet<>();
+        synchronized (this) {
+            for (Worker worker : workers) {
+                running.add(worker.name);
+            }
+        }
+        StreamInfo.XInfoConsumers consumers = connection.xInfoConsumers(ORDER_STREAM_KEY, ORDER_STREAM_GROUP);
+        for (int i = 0; consumers != null && i < consumers.size(); i++) {
+            StreamInfo.XInfoConsumer consumer = consumers.get(i);
+            if (consumer.pendingCount() == 0 && consumer.idleTimeMs() > STALE_CONSUMER_MILLIS
+                    && !running.contains(consumer.consumerName())) {
+                connection.xGroupDelConsumer(ORDER_STREAM_KEY, Consumer.from(ORDER_STREAM_GROUP, consumer.consumerName()));
+                log.info("删除已下线的订单消费者 {}", consumer.consumerName());
+            }
+        }
+    }
+
+    private void deadLetter(StringRedisConnection connection, StringRecord record, long deliveryCount) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (record.getValue() != null) {
+            values.putAll(record.getValue());
+        }
+        values.put("sourceId", record.getId().getValue());
+        values.put("deliveries", String.valueOf(deliveryCount));
+        connection.xAdd(StreamRecords.string(values).withStreamKey(ORDER_STREAM_DLQ_KEY));
+        connection.xAck(ORDER_STREAM_KEY, ORDER_STREAM_GROUP, record.getId());
+        dead.increment();
+        log.error("订单消息 {} 投递 {} 次仍未处理成功，已转入死信队列：{}", record.getId(), deliveryCount, values);
+    }
+
+    private class Worker implements Runnable {
+        private final String name;
+        private final Counter success;
+        private final Counter failure;
+        private final Timer batchTimer;
+        private volatile boolean running = true;
+
+        private Worker(String name) {
+            this.name = name;
+            this.success = meterRegistry.counter("hmdp.order.stream.messages", "consumer", name, "result", "success");
+            this.failure = meterRegistry.counter("hmdp.order.stream.messages", "consumer", name, "result", "failure");
+            this.batchTimer = meterRegistry.timer("hmdp.order.stream.batch", "consumer", name);
+        }
+
+        @Override
+        public void run() {
+            StringRedisConnection connection = new DefaultStringRedisConnection(connectionFactory.getConnection());
+            Consumer consumer = Consumer.from(ORDER_STREAM_GROUP, name);
+            // 启动时先处理这个消费者名下未确认的消息，之后失败的消息由 recover 按退避时间认领；
+            // 失败的消息仍留在 pending 中，所以每次从上一批最后一条之后继续读，直到读完
+            boolean pending = true;
+            String pendingOffset = "0";
+            long backoff = properties.getBlockMillis();
+            try {
+                while (running) {
+                    try {
+                        // 1.读取消息 XREADGROUP GROUP g1 <name> COUNT n [BLOCK ms] STREAMS stream.orders >|0
+                        StreamReadOptions options = StreamReadOptions.empty().count(properties.getBatchSize());
+                        if (!pending) {
+                            options = options.block(Duration.ofMillis(properties.getBlockMillis()));
+                        }
+                        List<StringRecord> records = connection.xReadGroupAsString(consumer, options,
+                                StreamOffset.create(ORDER_STREAM_KEY, pending ? ReadOffset.from(pendingOffset) : ReadOffset.lastConsumed()));
+                        if (records == null || records.isEmpty()) {
+                            pending = false;
+                            continue;
+                        }
+                        // 2.处理并确认，失败的消息留在 pending 中，超时后由 recover 认领重试，避免连续重试同一条消息
+                        batchTimer.record(() -> handle(connection, records, name, success, failure));
+                        if (pending) {
+                            pendingOffset = records.get(records.size() - 1).getId().getValue();
+                        }
+                        backoff = properties.getBlockMillis();
+                    } catch (Exception e) {
+                        // 3.Redis 不可用时等待，连续失败时等待时间翻倍
+                        log.error("消费者 {} 读取订单消息失败，{}ms 后重试", name, backoff, e);
+                        sleepQuietly(backoff);
+                        backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+                    }
+                }
+            } finally {
+                connection.close();
+                log.info("订单消费者 {} 已停止", name);
+            }
+        }
+
+        private void sleepQuietly(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+}
@@ -8,15 +8,59 @@ public class RedisConstants {
 
     public static final Long CACHE_NULL_TTL = 2L;
 
+    public static final String CACHE_SHADOW_KEY = "shadow:";
+    public static final Long CACHE_SHADOW_TTL = 24L;
+
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_SHOP_HASH_KEY = "cache:shop-hash:";
+    public static final Long CACHE_SHOP_LOCAL_TTL = 60L;
+    public static final Long CACHE_SHOP_LOCAL_SIZE = 1000L;
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    // 店铺资料（类型、坐标、名称等）变化通知，不是缓存 key，通过发件箱投递到缓存失效频道，进程内索引据此重新加载
+    public static final String SHOP_CHANGE_KEY = "shop:change:";
+    // 店铺计数、评分变化通知，消息为 店铺id:字段:新值，不论缓存结构都会发布
+    public static final String SHOP_COUNTER_CHANNEL = "shop:counter";
+
+    // 店铺类型的版本号，类型变化时自增并在频道中广播新版本
+    public static final String SHOP_TYPE_VERSION_KEY = "cache:shop-type:version";
+    public static final String SHOP_TYPE_VERSION_CHANNEL = "cache:shop-type:version";
+    public static final Long SHOP_TYPE_VERSION_CHECK_SECONDS = 30L;
+
+    public static final Long HOT_KEY_LOCAL_TTL = 5L;
+    public static final Long HOT_KEY_LOCAL_SIZE = 1000L;
+
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    // 注解属性只能使用基本类型的常量
+    public static final long CACHE_USER_INFO_TTL = 30L;
+    public static final String CACHE_USER_INFO_KEY = "cache:user:info:";
+
+    // 列表中包含秒杀库存，缓存时间较短，单位秒
+    public static final long CACHE_VOUCHER_LIST_TTL = 60L;
+    public static final String CACHE_VOUCHER_LIST_KEY = "cache:voucher:list:";
+
+    // 店铺点赞最多的笔记，点赞数变化不主动失效，单位秒
+    public static final long CACHE_SHOP_BLOG_TTL = 60L;
+    public static final String CACHE_SHOP_BLOG_KEY = "cache:blog:shop:";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    // 秒杀订单消息队列，由 seckill.lua 写入
+    public static final String ORDER_STREAM_KEY = "stream.orders";
+    public static final String ORDER_STREAM_GROUP = "g1";
+    // 多次投递仍处理失败的订单消息
+    public static final String ORDER_STREAM_DLQ_KEY = "stream.orders.dlq";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_RANK_KEY = "shop:rank:";
     public static final String USER_SIGN_KEY = "sign:";
 }
@@ -0,0 +1,106 @@
+package com.hmdp.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.Result;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应级缓存：按资源的 update_time 加内容摘要作为版本，缓存序列化好的 Result，直接写入输出流。
+ * update_time 只精确到秒，同一秒内的两次修改版本号相同，点赞数、作者昵称等也不影响 update_time，
+ * 所以再加上 Result 的 hashCode（实体都是 @Data，按全部字段计算）作为内容摘要，不需要先序列化。
+ * 版本和摘要组成 ETag，客户端带着 If-None-Match 请求且没有变化时返回 304；
+ * Last-Modified 只作为信息返回，不用来判断 304。与当前用户有关的部分通过 variant 区分。
+ */
+@Component
+public class ResponseCache {
+    public static final String HIT = "HIT";
+    public static final String MISS = "MISS";
+    public static final String NOT_MODIFIED = "NOT_MODIFIED";
+    public static final String BYPASS = "BYPASS";
+    private static final long MAXIMUM_SIZE = 10000L;
+    private static final long EXPIRE_MINUTES = 10L;
+
+    @Resource
+    private ObjectMapper objectMapper;
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    private final Cache<String, Entry> entries = Caffeine.newBuilder()
+            .maximumSize(MAXIMUM_SIZE)
+            .expireAfterWrite(EXPIRE_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 写出响应
+     *
+     * @param resource   资源类型，用于统计，例如 shop
+     * @param id         资源id
+     * @param result     查询结果，失败的结果不缓存
+     * @param updateTime 资源的更新时间，为空时不缓存
+     * @param variant    与当前用户有关的部分，没有时传 null
+     */
+    public void write(HttpServletRequest request, HttpServletResponse response, String resource, Object id,
+                      Result result, LocalDateTime updateTime, String variant) throws IOException {
+        // 1.失败或没有版本号的结果直接序列化
+        if (!Boolean.TRUE.equals(result.getSuccess()) || updateTime == null) {
+            cacheMetrics.recordResponse(resource, BYPASS);
+            writeBody(response, objectMapper.writeValueAsBytes(result));
+            return;
+        }
+        // 2.内容没有变化时返回 304，由 Spring 写入 ETag、Last-Modified
+        long version = updateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        int digest = result.hashCode();
+        String etag = "\"" + Long.toHexString(version) + "-" + Integer.toHexString(digest)
+                + (variant == null ? "" : "-" + variant) + "\"";
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (variant == null) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, version);
+        }
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            cacheMetrics.recordResponse(resource, NOT_MODIFIED);
+            return;
+        }
+        // 3.版本和摘要都相同时复用序列化好的内容
+        String key = resource + ":" + id + (variant == null ? "" : ":" + variant);
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && entry.version == version && entry.digest == digest) {
+            cacheMetrics.recordResponse(resource, HIT);
+        } else {
+            entry = new Entry(version, digest, objectMapper.writeValueAsBytes(result));
+            entries.put(key, entry);
+            cacheMetrics.recordResponse(resource, MISS);
+        }
+        writeBody(response, entry.body);
+    }
+
+    private static void writeBody(HttpServletResponse response, byte[] body) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private static class Entry {
+        private final long version;
+        private final int digest;
+        private final byte[] body;
+
+        private Entry(long version, int digest, byte[] body) {
+            this.version = version;
+            this.digest = digest;
+            this.body = body;
+        }
+    }
+}
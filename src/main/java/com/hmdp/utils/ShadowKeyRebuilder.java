@@ -0,0 +1,129 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从数据库全量重建按店铺维护的 Redis key（店铺坐标、排行榜）。
+ * 用 rebuildingKey 互斥并标记重建中；按id分批读取店铺，由调用方写入影子key &lt;key&gt;:rebuild，
+ * 全部写完后 RENAME 替换线上key，没有数据的线上key删除。
+ * 重建期间的增量修改需要调用方通过 isRebuilding 判断后同时写入影子key，避免替换后丢失。
+ */
+@Slf4j
+@Component
+public class ShadowKeyRebuilder {
+    private static final String REBUILD_SUFFIX = ":rebuild";
+    private static final long REBUILDING_TTL_MINUTES = 10L;
+    private static final int BATCH_SIZE = 1000;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    /**
+     * 把一批店铺写入影子key
+     */
+    @FunctionalInterface
+    public interface BatchWriter {
+        /**
+         * @param connection pipeline 中的连接
+         * @param shops      一批店铺，按id升序
+         * @param builtKeys  写入了数据的线上key（不带影子后缀），由实现添加
+         */
+        void write(StringRedisConnection connection, List<Shop> shops, Set<String> builtKeys);
+    }
+
+    public static String shadowKey(String key) {
+        return key + REBUILD_SUFFIX;
+    }
+
+    public boolean isRebuilding(String rebuildingKey) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(rebuildingKey));
+    }
+
+    /**
+     * @param name          重建的内容，用于日志和监控，如 geo、rank
+     * @param rebuildingKey 重建标记，同时作为互斥锁
+     * @param liveKeys      现有的线上key，重建后没有数据的会被删除
+     * @param columns       需要读取的店铺字段，必须包含 id
+     * @param writer        每批店铺的写入逻辑
+     * @return 店铺数、key数、耗时、速度，已有重建任务时返回 null
+     */
+    public Map<String, Object> rebuild(String name, String rebuildingKey, Collection<String> liveKeys,
+                                       String[] columns, BatchWriter writer) {
+        Boolean locked = stringRedisTemplate.opsForValue()
+                .setIfAbsent(rebuildingKey, "1", REBUILDING_TTL_MINUTES, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(locked)) {
+            return null;
+        }
+        try {
+            long begin = System.nanoTime();
+            // 1.清理上次失败残留的影子key
+            List<String> shadowKeys = new ArrayList<>(liveKeys.size());
+            for (String key : liveKeys) {
+                shadowKeys.add(shadowKey(key));
+            }
+            stringRedisTemplate.delete(shadowKeys);
+            // 2.按id分批读取，写入影子key
+            Set<String> builtKeys = new HashSet<>();
+            long lastId = 0;
+            long count = 0;
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select(columns)
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + BATCH_SIZE));
+                if (shops.isEmpty()) {
+                    break;
+                }
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    writer.write((StringRedisConnection) connection, shops, builtKeys);
+                    return null;
+                });
+                lastId = shops.get(shops.size() - 1).getId();
+                count += shops.size();
+                log.debug("{} 重建中，已写入店铺：{}", name, count);
+            }
+            // 3.替换线上key，没有数据的key删除
+            Set<String> allKeys = new HashSet<>(liveKeys);
+            allKeys.addAll(builtKeys);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (String key : allKeys) {
+                    if (builtKeys.contains(key)) {
+                        stringConnection.rename(shadowKey(key), key);
+                    } else {
+                        stringConnection.del(key);
+                    }
+                }
+                return null;
+            });
+            long nanos = System.nanoTime() - begin;
+            cacheMetrics.recordShadowRebuild(name, count, nanos);
+            long millis = Math.max(TimeUnit.NANOSECONDS.toMillis(nanos), 1);
+            log.info("{} 重建完成，店铺：{}，key：{}，耗时：{}ms", name, count, builtKeys.size(), millis);
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("shopCount", count);
+            stats.put("keyCount", builtKeys.size());
+            stats.put("elapsedMillis", millis);
+            stats.put("shopsPerSecond", count * 1000 / millis);
+            return stats;
+        } finally {
+            stringRedisTemplate.delete(rebuildingKey);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ShopFilterDTO;
+import com.hmdp.entity.Shop;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 店铺多条件筛选的位图索引，每个类型、商圈、人均价格档位、星级、是否有优惠券各一个 RoaringBitmap，元素为店铺id。
+ * 查询时对条件位图求交集，再按距离或排行维度取前 N 个。
+ * 坐标和排序值按店铺id保存在基本类型数组中，店铺id是自增的，数组基本是满的。
+ * 写入加写锁，查询加读锁。
+ */
+public class ShopBitmapIndex {
+    /**
+     * 人均价格档位的下界，第 i 档为 [PRICE_BANDS[i], PRICE_BANDS[i + 1])
+     */
+    public static final long[] PRICE_BANDS = {0, 50, 100, 200, 500};
+    private static final int MIN_STAR = 1;
+    private static final int MAX_STAR = 5;
+    private static final ShopRankStore.Dimension[] DIMENSIONS = ShopRankStore.Dimension.values();
+
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final Map<Long, RoaringBitmap> byType = new HashMap<>();
+    private final Map<String, RoaringBitmap> byArea = new HashMap<>();
+    private final RoaringBitmap[] byPrice = new RoaringBitmap[PRICE_BANDS.length];
+    private final RoaringBitmap[] byStar = new RoaringBitmap[MAX_STAR + 1];
+    private final RoaringBitmap withVoucher = new RoaringBitmap();
+    // 按店铺id保存的坐标和排序值，没有值时为 NaN
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+    private final double[][] values = new double[DIMENSIONS.length][0];
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ShopBitmapIndex() {
+        for (int i = 0; i < byPrice.length; i++) {
+            byPrice[i] = new RoaringBitmap();
+        }
+        for (int i = 0; i < byStar.length; i++) {
+            byStar[i] = new RoaringBitmap();
+        }
+    }
+
+    /**
+     * 写入或覆盖一个店铺
+     */
+    public void put(Shop shop) {
+        int id = Math.toIntExact(shop.getId());
+        lock.writeLock().lock();
+        try {
+            removeAttributes(id);
+            all.add(id);
+            if (shop.getTypeId() != null) {
+                byType.computeIfAbsent(shop.getTypeId(), k -> new RoaringBitmap()).add(id);
+            }
+            if (shop.getArea() != null) {
+                byArea.computeIfAbsent(shop.getArea(), k -> new RoaringBitmap()).add(id);
+            }
+            if (shop.getAvgPrice() != null) {
+                byPrice[priceBand(shop.getAvgPrice())].add(id);
+            }
+            if (shop.getScore() != null) {
+                byStar[star(shop.getScore())].add(id);
+            }
+            ensureCapacity(id);
+            xs[id] = shop.getX() == null ? Double.NaN : shop.getX();
+            ys[id] = shop.getY() == null ? Double.NaN : shop.getY();
+            for (ShopRankStore.Dimension dimension : DIMENSIONS) {
+                Number value = dimension.valueOf(shop);
+                values[dimension.ordinal()][id] = value == null ? Double.NaN : value.doubleValue();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除一个店铺，优惠券标记一起删除
+     */
+    public void remove(long shopId) {
+        int id = Math.toIntExact(shopId);
+        lock.writeLock().lock();
+        try {
+            removeAttributes(id);
+            all.remove(id);
+            withVoucher.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 只修改店铺的一个排序值，评分变化时同时修改星级，店铺不存在时忽略
+     */
+    public void setValue(long shopId, ShopRankStore.Dimension dimension, Number value) {
+        int id = Math.toIntExact(shopId);
+        lock.writeLock().lock();
+        try {
+            if (!all.contains(id)) {
+                return;
+            }
+            values[dimension.ordinal()][id] = value.doubleValue();
+            if (dimension == ShopRankStore.Dimension.SCORE) {
+                for (RoaringBitmap bitmap : byStar) {
+                    bitmap.remove(id);
+                }
+                byStar[star(value.intValue())].add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 标记店铺是否有上架中的优惠券
+     */
+    public void setVoucher(long shopId, boolean hasVoucher) {
+        int id = Math.toIntExact(shopId);
+        lock.writeLock().lock();
+        try {
+            if (hasVoucher) {
+                withVoucher.add(id);
+            } else {
+                withVoucher.remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return all.getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 筛选店铺
+     *
+     * @param filter 筛选条件，其中的 current 为页码，不能超过 SystemConstants.MAX_PAGE
+     * @param size   每页数量
+     * @return 这一页的店铺，按距离排序时带上距离
+     */
+    public List<Hit> query(ShopFilterDTO filter, int size) {
+        ShopRankStore.Dimension dimension = null;
+        if (filter.getSort() != null) {
+            dimension = ShopRankStore.Dimension.of(filter.getSort());
+            if (dimension == null) {
+                throw new IllegalArgumentException("不支持的排序方式：" + filter.getSort());
+            }
+        }
+        boolean byDistance = dimension == null && filter.getX() != null && filter.getY() != null;
+        int current = filter.getCurrent() == null || filter.getCurrent() < 1 ? 1 : filter.getCurrent();
+        if (current > SystemConstants.MAX_PAGE) {
+            // 排序时要保留前 current * size 个结果，页码不能无限大
+            throw new IllegalArgumentException("页码不能超过" + SystemConstants.MAX_PAGE);
+        }
+        int from = (current - 1) * size;
+        lock.readLock().lock();
+        try {
+            // 1.求交集
+            RoaringBitmap matched = match(filter);
+            if (matched.isEmpty()) {
+                return Collections.emptyList();
+            }
+            // 2.不需要排序时按id顺序跳过前面的页
+            if (dimension == null && !byDistance) {
+                List<Hit> hits = new ArrayList<>(size);
+                IntIterator iterator = matched.getIntIterator();
+                for (int i = 0; iterator.hasNext() && hits.size() < size; i++) {
+                    int id = iterator.next();
+                    if (i >= from) {
+                        hits.add(new Hit(id, 0));
+                    }
+                }
+                return hits;
+            }
+            // 3.需要排序时用大顶堆保留前 from + size 个
+            int limit = from + size;
+            PriorityQueue<Hit> heap = new PriorityQueue<>(limit + 1, Comparator.reverseOrder());
+            double[] sortValues = dimension == null ? null : values[dimension.ordinal()];
+            IntIterator iterator = matched.getIntIterator();
+            while (iterator.hasNext()) {
+                int id = iterator.next();
+                double key;
+                if (byDistance) {
+                    if (Double.isNaN(xs[id])) {
+                        continue;
+                    }
+                    key = GeoGridIndex.distance(filter.getX(), filter.getY(), xs[id], ys[id]);
+                } else {
+                    if (Double.isNaN(sortValues[id])) {
+                        continue;
+                    }
+                    key = dimension.isDesc() ? -sortValues[id] : sortValues[id];
+                }
+                if (heap.size() < limit) {
+                    heap.offer(new Hit(id, key));
+                } else if (compare(key, id, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.offer(new Hit(id, key));
+                }
+            }
+            if (heap.size() <= from) {
+                return Collections.emptyList();
+            }
+            List<Hit> hits = new ArrayList<>(heap);
+            Collections.sort(hits);
+            return hits.subList(from, hits.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RoaringBitmap match(ShopFilterDTO filter) {
+        List<RoaringBitmap> conditions = new ArrayList<>();
+        if (filter.getTypeId() != null) {
+            conditions.add(byType.getOrDefault(filter.getTypeId(), new RoaringBitmap()));
+        }
+        if (filter.getArea() != null && !filter.getArea().isEmpty()) {
+            conditions.add(byArea.getOrDefault(filter.getArea(), new RoaringBitmap()));
+        }
+        if (filter.getPriceBands() != null && !filter.getPriceBands().isEmpty()) {
+            RoaringBitmap price = new RoaringBitmap();
+            for (Integer band : filter.getPriceBands()) {
+                if (band != null && band >= 0 && band < byPrice.length) {
+                    price.or(byPrice[band]);
+                }
+            }
+            conditions.add(price);
+        }
+        if (filter.getMinStar() != null) {
+            RoaringBitmap star = new RoaringBitmap();
+            for (int i = Math.max(filter.getMinStar(), MIN_STAR); i <= MAX_STAR; i++) {
+                star.or(byStar[i]);
+            }
+            conditions.add(star);
+        }
+        if (Boolean.TRUE.equals(filter.getHasVoucher())) {
+            conditions.add(withVoucher);
+        }
+        RoaringBitmap result;
+        if (conditions.isEmpty()) {
+            result = all.clone();
+        } else {
+            // 从最小的位图开始求交集，中间结果尽快变小
+            conditions.sort(Comparator.comparingInt(RoaringBitmap::getCardinality));
+            result = conditions.get(0).clone();
+            for (int i = 1; i < conditions.size() && !result.isEmpty(); i++) {
+                result.and(conditions.get(i));
+            }
+        }
+        if (Boolean.FALSE.equals(filter.getHasVoucher())) {
+            result.andNot(withVoucher);
+        }
+        return result;
+    }
+
+    private void removeAttributes(int id) {
+        if (!all.contains(id)) {
+            return;
+        }
+        // 类型、商圈的数量不多，直接从所有位图中删除，不需要记录店铺原来的属性
+        for (RoaringBitmap bitmap : byType.values()) {
+            bitmap.remove(id);
+        }
+        for (RoaringBitmap bitmap : byArea.values()) {
+            bitmap.remove(id);
+        }
+        for (RoaringBitmap bitmap : byPrice) {
+            bitmap.remove(id);
+        }
+        for (RoaringBitmap bitmap : byStar) {
+            bitmap.remove(id);
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < xs.length) {
+            return;
+        }
+        int capacity = Math.max(id + 1, xs.length + (xs.length >> 1));
+        xs = grow(xs, capacity);
+        ys = grow(ys, capacity);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = grow(values[i], capacity);
+        }
+    }
+
+    private static double[] grow(double[] array, int capacity) {
+        double[] newArray = Arrays.copyOf(array, capacity);
+        Arrays.fill(newArray, array.length, capacity, Double.NaN);
+        return newArray;
+    }
+
+    private static int priceBand(long avgPrice) {
+        for (int i = PRICE_BANDS.length - 1; i > 0; i--) {
+            if (avgPrice >= PRICE_BANDS[i]) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static int star(int score) {
+        return Math.min(Math.max(score / 10, MIN_STAR), MAX_STAR);
+    }
+
+    private static int compare(double key, int id, Hit hit) {
+        int c = Double.compare(key, hit.key);
+        return c != 0 ? c : Integer.compare(id, hit.id);
+    }
+
+    /**
+     * 筛选结果，key 越小越靠前；按距离排序时 key 就是距离
+     */
+    public static class Hit implements Comparable<Hit> {
+        private final int id;
+        private final double key;
+
+        Hit(int id, double key) {
+            this.id = id;
+            this.key = key;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public double getKey() {
+            return key;
+        }
+
+        @Override
+        public int compareTo(Hit o) {
+            return compare(key, id, o);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+
+/**
+ * shop:counter 频道的消息：店铺id:字段:新值，字段为 sold、comments、score
+ */
+public class ShopCounterMessage {
+    private final long shopId;
+    private final ShopRankStore.Dimension dimension;
+    private final long value;
+
+    private ShopCounterMessage(long shopId, ShopRankStore.Dimension dimension, long value) {
+        this.shopId = shopId;
+        this.dimension = dimension;
+        this.value = value;
+    }
+
+    /**
+     * @return 格式不正确时返回 null
+     */
+    public static ShopCounterMessage parse(String message) {
+        String[] parts = message.split(":");
+        if (parts.length != 3 || !StrUtil.isNumeric(parts[0])) {
+            return null;
+        }
+        ShopRankStore.Dimension dimension = ShopRankStore.Dimension.of(parts[1]);
+        if (dimension == null) {
+            return null;
+        }
+        try {
+            return new ShopCounterMessage(Long.parseLong(parts[0]), dimension, Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public long getShopId() {
+        return shopId;
+    }
+
+    public ShopRankStore.Dimension getDimension() {
+        return dimension;
+    }
+
+    public long getValue() {
+        return value;
+    }
+}
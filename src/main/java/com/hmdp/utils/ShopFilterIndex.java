@@ -0,0 +1,150 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.ShopFilterDTO;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.VoucherMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 进程内的店铺筛选索引，数据结构见 ShopBitmapIndex。
+ * 启动时从数据库加载全部店铺和有上架优惠券的店铺；之后监听缓存失效频道，
+ * 收到 shop:change:&lt;id&gt; 时重新查询这个店铺，收到 cache:voucher:list:&lt;shopId&gt; 时重新查询这个店铺是否有优惠券。
+ * 销量、评价数、评分的变化通过 shop:counter 频道通知，消息中带有新值，直接修改，不查询数据库。
+ */
+@Slf4j
+@Component
+public class ShopFilterIndex implements MessageListener {
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private VoucherMapper voucherMapper;
+
+    private final ShopBitmapIndex index = new ShopBitmapIndex();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("shop-filter-index-", true));
+    private volatile boolean ready;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        executor.execute(this::load);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 筛选店铺
+     *
+     * @see ShopBitmapIndex#query(ShopFilterDTO, int)
+     */
+    public List<ShopBitmapIndex.Hit> query(ShopFilterDTO filter, int size) {
+        return index.query(filter, size);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (SHOP_COUNTER_CHANNEL.equals(new String(message.getChannel(), StandardCharsets.UTF_8))) {
+            ShopCounterMessage counter = ShopCounterMessage.parse(key);
+            if (counter != null) {
+                executor.execute(() -> index.setValue(counter.getShopId(), counter.getDimension(), counter.getValue()));
+            }
+            return;
+        }
+        if (key.startsWith(CACHE_VOUCHER_LIST_KEY)) {
+            String shopId = key.substring(CACHE_VOUCHER_LIST_KEY.length());
+            if (StrUtil.isNumeric(shopId)) {
+                executor.execute(() -> reloadVoucher(Long.valueOf(shopId)));
+            }
+            return;
+        }
+        if (!key.startsWith(SHOP_CHANGE_KEY)) {
+            return;
+        }
+        String id = key.substring(SHOP_CHANGE_KEY.length());
+        if (StrUtil.isNumeric(id)) {
+            executor.execute(() -> reload(Long.valueOf(id)));
+        }
+    }
+
+    private void load() {
+        long begin = System.currentTimeMillis();
+        // 1.分批加载店铺
+        long lastId = 0;
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "type_id", "area", "avg_price", "score", "sold", "comments", "x", "y")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + LOAD_BATCH_SIZE));
+            if (shops.isEmpty()) {
+                break;
+            }
+            for (Shop shop : shops) {
+                index.put(shop);
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+        }
+        // 2.加载有上架优惠券的店铺，与 queryVoucherOfShop 一致，status = 1 为上架
+        List<Voucher> vouchers = voucherMapper.selectList(new QueryWrapper<Voucher>()
+                .select("DISTINCT shop_id")
+                .eq("status", 1));
+        for (Voucher voucher : vouchers) {
+            index.setVoucher(voucher.getShopId(), true);
+        }
+        ready = true;
+        log.info("店铺筛选索引加载完成，店铺：{}，有优惠券的店铺：{}，耗时：{}ms",
+                index.size(), vouchers.size(), System.currentTimeMillis() - begin);
+    }
+
+    private void reload(Long id) {
+        try {
+            Shop shop = shopMapper.selectById(id);
+            if (shop == null) {
+                index.remove(id);
+                return;
+            }
+            index.put(shop);
+            reloadVoucher(id);
+        } catch (Exception e) {
+            log.error("更新店铺筛选索引失败，id：{}", id, e);
+        }
+    }
+
+    private void reloadVoucher(Long shopId) {
+        try {
+            Integer count = voucherMapper.selectCount(new QueryWrapper<Voucher>()
+                    .eq("shop_id", shopId)
+                    .eq("status", 1));
+            index.setVoucher(shopId, count != null && count > 0);
+        } catch (Exception e) {
+            log.error("更新店铺优惠券标记失败，shopId：{}", shopId, e);
+        }
+    }
+}
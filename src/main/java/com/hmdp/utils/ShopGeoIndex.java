@@ -0,0 +1,171 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static com.hmdp.utils.RedisConstants.SHOP_CHANGE_KEY;
+
+/**
+ * 进程内的店铺坐标索引，每个店铺类型一个 GeoGridIndex。
+ * 启动时从数据库加载全部坐标；之后监听缓存失效频道，收到 shop:change:&lt;id&gt; 时重新查询这个店铺，
+ * 店铺的新增、修改（包括更换类型和删除）都会在所有节点上同步；销量等计数的变化不会发送这个通知。
+ * 类型和坐标变化时重建对应类型的索引并整体替换，查询不加锁；没有变化时不重建。
+ */
+@Slf4j
+@Component
+public class ShopGeoIndex implements MessageListener {
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    // 类型 -> (店铺id -> 坐标)，只在写线程中修改
+    private final Map<Long, Map<Long, double[]>> points = new HashMap<>();
+    // 店铺id -> 类型，用于店铺更换类型时从旧类型中删除
+    private final Map<Long, Long> typeOfShop = new HashMap<>();
+    private final Map<Long, GeoGridIndex> indexes = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("shop-geo-index-", true));
+    private volatile boolean ready;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        executor.execute(this::load);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 查询某个类型下距离最近的店铺
+     *
+     * @see GeoGridIndex#nearest(double, double, double, double, long, int)
+     */
+    public List<GeoGridIndex.Hit> nearest(Long typeId, double x, double y, double maxDistance,
+                                          double afterDistance, long afterId, int limit) {
+        GeoGridIndex index = indexes.get(typeId);
+        if (index == null) {
+            return Collections.emptyList();
+        }
+        return index.nearest(x, y, maxDistance, afterDistance, afterId, limit);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (!key.startsWith(SHOP_CHANGE_KEY)) {
+            return;
+        }
+        String id = key.substring(SHOP_CHANGE_KEY.length());
+        if (StrUtil.isNumeric(id)) {
+            executor.execute(() -> reload(Long.valueOf(id)));
+        }
+    }
+
+    private void load() {
+        long begin = System.currentTimeMillis();
+        long lastId = 0;
+        int count = 0;
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "type_id", "x", "y")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + LOAD_BATCH_SIZE));
+            if (shops.isEmpty()) {
+                break;
+            }
+            for (Shop shop : shops) {
+                putPoint(shop);
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+            count += shops.size();
+        }
+        for (Long typeId : points.keySet()) {
+            rebuild(typeId);
+        }
+        ready = true;
+        log.info("店铺坐标索引加载完成，店铺：{}，耗时：{}ms", count, System.currentTimeMillis() - begin);
+    }
+
+    private void reload(Long id) {
+        try {
+            Shop shop = shopMapper.selectOne(new QueryWrapper<Shop>()
+                    .select("id", "type_id", "x", "y")
+                    .eq("id", id));
+            if (shop != null && !changed(shop)) {
+                return;
+            }
+            Long oldType = removePoint(id);
+            if (shop != null) {
+                putPoint(shop);
+                rebuild(shop.getTypeId());
+            }
+            if (oldType != null && (shop == null || !oldType.equals(shop.getTypeId()))) {
+                rebuild(oldType);
+            }
+        } catch (Exception e) {
+            log.error("更新店铺坐标索引失败，id：{}", id, e);
+        }
+    }
+
+    /**
+     * 类型或坐标是否与索引中的不同
+     */
+    private boolean changed(Shop shop) {
+        Long typeId = typeOfShop.get(shop.getId());
+        if (typeId == null) {
+            return true;
+        }
+        double[] point = points.get(typeId).get(shop.getId());
+        return !typeId.equals(shop.getTypeId())
+                || shop.getX() == null || shop.getY() == null
+                || point[0] != shop.getX() || point[1] != shop.getY();
+    }
+
+    private void putPoint(Shop shop) {
+        if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+            return;
+        }
+        points.computeIfAbsent(shop.getTypeId(), k -> new HashMap<>())
+                .put(shop.getId(), new double[]{shop.getX(), shop.getY()});
+        typeOfShop.put(shop.getId(), shop.getTypeId());
+    }
+
+    private Long removePoint(Long id) {
+        Long typeId = typeOfShop.remove(id);
+        if (typeId != null) {
+            points.get(typeId).remove(id);
+        }
+        return typeId;
+    }
+
+    private void rebuild(Long typeId) {
+        Map<Long, double[]> typePoints = points.get(typeId);
+        if (typePoints == null || typePoints.isEmpty()) {
+            indexes.remove(typeId);
+            return;
+        }
+        indexes.put(typeId, new GeoGridIndex(typePoints));
+    }
+}
@@ -0,0 +1,89 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.mapper.ShopTypeMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static com.hmdp.utils.ShadowKeyRebuilder.shadowKey;
+
+/**
+ * 维护 Redis 中的店铺坐标 shop:geo:&lt;typeId&gt;。
+ * 店铺写入时增量 GEOADD / ZREM；全量重建由 ShadowKeyRebuilder 分批写入影子key shop:geo:&lt;typeId&gt;:rebuild，完成后 RENAME 替换，
+ * 重建期间的增量修改会同时写入影子key，避免替换后丢失。
+ */
+@Slf4j
+@Component
+public class ShopGeoStore {
+    // 重建标记，同时作为重建的互斥锁
+    private static final String REBUILDING_KEY = SHOP_GEO_KEY + "rebuilding";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ShopTypeMapper shopTypeMapper;
+    @Resource
+    private ShadowKeyRebuilder shadowKeyRebuilder;
+
+    /**
+     * 写入店铺坐标，店铺更换类型时从旧类型中删除
+     *
+     * @param id        店铺id
+     * @param oldTypeId 修改前的类型，新增时为 null
+     * @param typeId    修改后的类型
+     * @param x         经度
+     * @param y         纬度
+     */
+    public void save(Long id, Long oldTypeId, Long typeId, Double x, Double y) {
+        boolean rebuilding = shadowKeyRebuilder.isRebuilding(REBUILDING_KEY);
+        String member = id.toString();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            if (oldTypeId != null && !oldTypeId.equals(typeId)) {
+                stringConnection.zRem(SHOP_GEO_KEY + oldTypeId, member);
+                if (rebuilding) {
+                    stringConnection.zRem(shadowKey(SHOP_GEO_KEY + oldTypeId), member);
+                }
+            }
+            if (typeId != null && x != null && y != null) {
+                stringConnection.geoAdd(SHOP_GEO_KEY + typeId, new Point(x, y), member);
+                if (rebuilding) {
+                    stringConnection.geoAdd(shadowKey(SHOP_GEO_KEY + typeId), new Point(x, y), member);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 从数据库全量重建所有类型的店铺坐标
+     *
+     * @return 店铺数、key数、耗时、速度，已有重建任务时返回 null
+     */
+    public Map<String, Object> rebuild() {
+        List<String> liveKeys = new ArrayList<>();
+        for (ShopType shopType : shopTypeMapper.selectList(null)) {
+            liveKeys.add(SHOP_GEO_KEY + shopType.getId());
+        }
+        return shadowKeyRebuilder.rebuild("geo", REBUILDING_KEY, liveKeys,
+                new String[]{"id", "type_id", "x", "y"}, (connection, shops, builtKeys) -> {
+                    for (Shop shop : shops) {
+                        if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+                            continue;
+                        }
+                        String key = SHOP_GEO_KEY + shop.getTypeId();
+                        connection.geoAdd(shadowKey(key), new Point(shop.getX(), shop.getY()), shop.getId().toString());
+                        builtKeys.add(key);
+                    }
+                });
+    }
+}
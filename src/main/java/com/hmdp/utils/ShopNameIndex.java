@@ -0,0 +1,450 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.hmdp.utils.RedisConstants.SHOP_CHANGE_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_COUNTER_CHANNEL;
+
+/**
+ * 店铺名称和商圈的倒排索引，按单字和相邻两个字（bigram）切分，适合没有分词的中文。
+ * 查询词的所有 bigram 都命中的店铺才是候选，名称或商圈确实包含查询词的才是结果，再按匹配程度（名称完全相同 &gt; 前缀 &gt; 包含 &gt; 只有商圈包含）、
+ * 评分或销量、id 排序，通过游标分页。
+ * 与 ShopGeoIndex 一样，启动时加载全部店铺，之后监听缓存失效频道逐个更新；评分、销量的变化通过 shop:counter 频道直接修改。
+ * 启动时一次性构建倒排表，之后的增量更新复制单个倒排表；删除的店铺超过一定比例时重新编号并重建。
+ */
+@Slf4j
+@Component
+public class ShopNameIndex implements MessageListener {
+    public static final String SORT_SCORE = "score";
+    public static final String SORT_SOLD = "sold";
+    private static final int LOAD_BATCH_SIZE = 1000;
+    private static final int[] EMPTY = new int[0];
+    // 删除的文档超过这个数量，并且超过文档总数的 1/4 时重建索引
+    private static final int COMPACT_MIN_DELETED = 1000;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    // 文档按序号保存，删除的店铺置为 null，重建之前序号不会复用给其它店铺
+    private List<Doc> docs = new ArrayList<>();
+    private Map<Long, Integer> ordinals = new HashMap<>();
+    // 词 -> 升序的文档序号
+    private Map<String, int[]> postings = new HashMap<>();
+    private int deleted;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("shop-name-index-", true));
+    private volatile boolean ready;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        executor.execute(this::load);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 搜索店铺
+     *
+     * @param keyword 关键字
+     * @param sort    相同匹配程度下的排序字段，score 或 sold
+     * @param after   上一页最后一条的游标，第一页传 null
+     * @param limit   最多返回的数量
+     * @return 排好序的结果
+     */
+    public List<Hit> search(String keyword, String sort, Hit after, int limit) {
+        String query = normalize(keyword);
+        if (query.isEmpty()) {
+            return Collections.emptyList();
+        }
+        boolean bySold = SORT_SOLD.equals(sort);
+        lock.readLock().lock();
+        try {
+            // 1.求所有查询词的交集，从最短的倒排表开始
+            List<int[]> lists = new ArrayList<>();
+            for (String token : queryTokens(query)) {
+                int[] list = postings.getOrDefault(token, EMPTY);
+                if (list.length == 0) {
+                    return Collections.emptyList();
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.length));
+            // 2.只保留排在游标之后的前 limit 个，大顶堆
+            PriorityQueue<Hit> heap = new PriorityQueue<>(limit + 1, Comparator.reverseOrder());
+            for (int ordinal : lists.get(0)) {
+                if (!containsAll(lists, ordinal)) {
+                    continue;
+                }
+                Doc doc = docs.get(ordinal);
+                // bigram 可能分别来自名称和商圈，或者在原文中不相邻，需要确认原文包含查询词
+                if (!doc.name.contains(query) && !doc.area.contains(query)) {
+                    continue;
+                }
+                Hit hit = new Hit(doc.id, quality(doc, query), bySold ? doc.sold : doc.score);
+                if (after != null && hit.compareTo(after) <= 0) {
+                    continue;
+                }
+                if (heap.size() < limit) {
+                    heap.offer(hit);
+                } else if (hit.compareTo(heap.peek()) < 0) {
+                    heap.poll();
+                    heap.offer(hit);
+                }
+            }
+            List<Hit> result = new ArrayList<>(heap);
+            Collections.sort(result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (SHOP_COUNTER_CHANNEL.equals(new String(message.getChannel(), StandardCharsets.UTF_8))) {
+            ShopCounterMessage counter = ShopCounterMessage.parse(key);
+            if (counter != null) {
+                executor.execute(() -> updateCounter(counter));
+            }
+            return;
+        }
+        if (!key.startsWith(SHOP_CHANGE_KEY)) {
+            return;
+        }
+        String id = key.substring(SHOP_CHANGE_KEY.length());
+        if (StrUtil.isNumeric(id)) {
+            executor.execute(() -> reload(Long.valueOf(id)));
+        }
+    }
+
+    /**
+     * 先在锁外读取全部店铺，构建好之后一次替换；和增量更新在同一个线程执行，不会交错
+     */
+    private void load() {
+        long begin = System.currentTimeMillis();
+        long lastId = 0;
+        List<Doc> loaded = new ArrayList<>();
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "name", "area", "score", "sold")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + LOAD_BATCH_SIZE));
+            if (shops.isEmpty()) {
+                break;
+            }
+            for (Shop shop : shops) {
+                loaded.add(new Doc(shop));
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+        }
+        Map<String, int[]> built = build(loaded);
+        lock.writeLock().lock();
+        try {
+            install(loaded, built);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ready = true;
+        log.info("店铺名称索引加载完成，店铺：{}，词数：{}，耗时：{}ms", loaded.size(), built.size(), System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 按文档顺序构建倒排表，序号就是下标，每个词的序号依次追加即为升序
+     */
+    private static Map<String, int[]> build(List<Doc> docs) {
+        Map<String, IntList> lists = new HashMap<>();
+        for (int ordinal = 0; ordinal < docs.size(); ordinal++) {
+            for (String token : docTokens(docs.get(ordinal))) {
+                lists.computeIfAbsent(token, k -> new IntList()).add(ordinal);
+            }
+        }
+        Map<String, int[]> built = new HashMap<>(lists.size() * 4 / 3 + 1);
+        lists.forEach((token, list) -> built.put(token, list.toArray()));
+        return built;
+    }
+
+    private void install(List<Doc> newDocs, Map<String, int[]> newPostings) {
+        Map<Long, Integer> newOrdinals = new HashMap<>(newDocs.size() * 4 / 3 + 1);
+        for (int ordinal = 0; ordinal < newDocs.size(); ordinal++) {
+            newOrdinals.put(newDocs.get(ordinal).id, ordinal);
+        }
+        docs = newDocs;
+        ordinals = newOrdinals;
+        postings = newPostings;
+        deleted = 0;
+    }
+
+    /**
+     * 去掉已删除的文档，重新编号并重建倒排表，调用方持有写锁
+     */
+    private void compact() {
+        long begin = System.currentTimeMillis();
+        List<Doc> live = new ArrayList<>(docs.size() - deleted);
+        for (Doc doc : docs) {
+            if (doc != null) {
+                live.add(doc);
+            }
+        }
+        int removed = deleted;
+        install(live, build(live));
+        log.info("店铺名称索引重建完成，清理已删除店铺：{}，耗时：{}ms", removed, System.currentTimeMillis() - begin);
+    }
+
+    private void reload(Long id) {
+        try {
+            Shop shop = shopMapper.selectById(id);
+            lock.writeLock().lock();
+            try {
+                remove(id);
+                if (shop != null) {
+                    put(shop);
+                }
+                if (deleted >= COMPACT_MIN_DELETED && deleted > docs.size() / 4) {
+                    compact();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            log.error("更新店铺名称索引失败，id：{}", id, e);
+        }
+    }
+
+    private void updateCounter(ShopCounterMessage counter) {
+        ShopRankStore.Dimension dimension = counter.getDimension();
+        if (dimension != ShopRankStore.Dimension.SCORE && dimension != ShopRankStore.Dimension.SOLD) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(counter.getShopId());
+            Doc doc = ordinal == null ? null : docs.get(ordinal);
+            if (doc == null) {
+                return;
+            }
+            // 名称和商圈不变，倒排表不需要修改
+            int value = (int) counter.getValue();
+            docs.set(ordinal, dimension == ShopRankStore.Dimension.SCORE
+                    ? new Doc(doc, value, doc.sold) : new Doc(doc, doc.score, value));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(Shop shop) {
+        Doc doc = new Doc(shop);
+        Integer ordinal = ordinals.get(doc.id);
+        if (ordinal == null) {
+            ordinal = docs.size();
+            docs.add(doc);
+            ordinals.put(doc.id, ordinal);
+        } else {
+            if (docs.get(ordinal) == null) {
+                deleted--;
+            }
+            docs.set(ordinal, doc);
+        }
+        for (String token : docTokens(doc)) {
+            int[] list = postings.getOrDefault(token, EMPTY);
+            int pos = Arrays.binarySearch(list, ordinal);
+            if (pos >= 0) {
+                continue;
+            }
+            pos = -pos - 1;
+            int[] newList = new int[list.length + 1];
+            System.arraycopy(list, 0, newList, 0, pos);
+            newList[pos] = ordinal;
+            System.arraycopy(list, pos, newList, pos + 1, list.length - pos);
+            postings.put(token, newList);
+        }
+    }
+
+    private void remove(Long id) {
+        Integer ordinal = ordinals.get(id);
+        if (ordinal == null || docs.get(ordinal) == null) {
+            return;
+        }
+        for (String token : docTokens(docs.get(ordinal))) {
+            int[] list = postings.get(token);
+            int pos = list == null ? -1 : Arrays.binarySearch(list, ordinal);
+            if (pos < 0) {
+                continue;
+            }
+            if (list.length == 1) {
+                postings.remove(token);
+                continue;
+            }
+            int[] newList = new int[list.length - 1];
+            System.arraycopy(list, 0, newList, 0, pos);
+            System.arraycopy(list, pos + 1, newList, pos, list.length - pos - 1);
+            postings.put(token, newList);
+        }
+        docs.set(ordinal, null);
+        deleted++;
+    }
+
+    private static boolean containsAll(List<int[]> lists, int ordinal) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (Arrays.binarySearch(lists.get(i), ordinal) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 匹配程度，越大越靠前
+     */
+    private static int quality(Doc doc, String query) {
+        if (doc.name.equals(query)) {
+            return 3;
+        }
+        if (doc.name.startsWith(query)) {
+            return 2;
+        }
+        return doc.name.contains(query) ? 1 : 0;
+    }
+
+    /**
+     * 文档的词：名称和商圈的所有单字和 bigram
+     */
+    private static Set<String> docTokens(Doc doc) {
+        Set<String> tokens = new HashSet<>();
+        for (String text : new String[]{doc.name, doc.area}) {
+            for (int i = 0; i < text.length(); i++) {
+                tokens.add(text.substring(i, i + 1));
+                if (i + 1 < text.length()) {
+                    tokens.add(text.substring(i, i + 2));
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 查询词：单个字时查单字，否则查所有 bigram
+     */
+    private static Set<String> queryTokens(String query) {
+        if (query.length() == 1) {
+            return Collections.singleton(query);
+        }
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i + 1 < query.length(); i++) {
+            tokens.add(query.substring(i, i + 2));
+        }
+        return tokens;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : StrUtil.cleanBlank(text).toLowerCase();
+    }
+
+    /**
+     * 构建倒排表时使用的可增长 int 数组
+     */
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private int[] toArray() {
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        }
+    }
+
+    private static class Doc {
+        private final long id;
+        private final String name;
+        private final String area;
+        private final int score;
+        private final int sold;
+
+        private Doc(Shop shop) {
+            this.id = shop.getId();
+            this.name = normalize(shop.getName());
+            this.area = normalize(shop.getArea());
+            this.score = shop.getScore() == null ? 0 : shop.getScore();
+            this.sold = shop.getSold() == null ? 0 : shop.getSold();
+        }
+
+        private Doc(Doc doc, int score, int sold) {
+            this.id = doc.id;
+            this.name = doc.name;
+            this.area = doc.area;
+            this.score = score;
+            this.sold = sold;
+        }
+    }
+
+    /**
+     * 搜索结果，按匹配程度降序、排序值降序、id 升序排列，同时作为分页游标
+     */
+    public static class Hit implements Comparable<Hit> {
+        private final long id;
+        private final int quality;
+        private final int sortValue;
+
+        public Hit(long id, int quality, int sortValue) {
+            this.id = id;
+            this.quality = quality;
+            this.sortValue = sortValue;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public int getQuality() {
+            return quality;
+        }
+
+        public int getSortValue() {
+            return sortValue;
+        }
+
+        @Override
+        public int compareTo(Hit o) {
+            if (quality != o.quality) {
+                return Integer.compare(o.quality, quality);
+            }
+            if (sortValue != o.sortValue) {
+                return Integer.compare(o.sortValue, sortValue);
+            }
+            return Long.compare(id, o.id);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.mapper.ShopTypeMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.SHOP_RANK_KEY;
+import static com.hmdp.utils.ShadowKeyRebuilder.shadowKey;
+
+/**
+ * 维护 Redis 中每个店铺类型、每个排序维度的排行榜 shop:rank:&lt;typeId&gt;:&lt;dimension&gt;，member 为店铺id。
+ * 店铺写入时增量 ZADD / ZREM；全量重建与 ShopGeoStore 相同，由 ShadowKeyRebuilder 写入影子key后 RENAME 替换，
+ * 重建期间的增量修改同时写入影子key。
+ */
+@Slf4j
+@Component
+public class ShopRankStore {
+    // 重建标记，同时作为重建的互斥锁
+    private static final String REBUILDING_KEY = SHOP_RANK_KEY + "rebuilding";
+
+    /**
+     * 排序维度
+     */
+    public enum Dimension {
+        SOLD("sold", true, Shop::getSold),
+        SCORE("score", true, Shop::getScore),
+        COMMENTS("comments", true, Shop::getComments),
+        AVG_PRICE("avgPrice", false, Shop::getAvgPrice);
+
+        private final String name;
+        // 是否从大到小排列
+        private final boolean desc;
+        private final Function<Shop, Number> getter;
+
+        Dimension(String name, boolean desc, Function<Shop, Number> getter) {
+            this.name = name;
+            this.desc = desc;
+            this.getter = getter;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDesc() {
+            return desc;
+        }
+
+        public Number valueOf(Shop shop) {
+            return getter.apply(shop);
+        }
+
+        public static Dimension of(String name) {
+            for (Dimension dimension : values()) {
+                if (dimension.name.equals(name)) {
+                    return dimension;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ShopTypeMapper shopTypeMapper;
+    @Resource
+    private ShadowKeyRebuilder shadowKeyRebuilder;
+
+    /**
+     * 写入店铺在各个维度的排名，只写入不为空的维度；店铺更换类型时从旧类型中删除
+     *
+     * @param shop      店铺，typeId 不能为空
+     * @param oldTypeId 修改前的类型，新增时为 null
+     */
+    public void save(Shop shop, Long oldTypeId) {
+        boolean rebuilding = shadowKeyRebuilder.isRebuilding(REBUILDING_KEY);
+        String member = shop.getId().toString();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (Dimension dimension : Dimension.values()) {
+                if (oldTypeId != null && !oldTypeId.equals(shop.getTypeId())) {
+                    stringConnection.zRem(key(oldTypeId, dimension), member);
+                    if (rebuilding) {
+                        stringConnection.zRem(shadowKey(key(oldTypeId, dimension)), member);
+                    }
+                }
+                Number value = dimension.getter.apply(shop);
+                if (shop.getTypeId() == null || value == null) {
+                    continue;
+                }
+                stringConnection.zAdd(key(shop.getTypeId(), dimension), value.doubleValue(), member);
+                if (rebuilding) {
+                    stringConnection.zAdd(shadowKey(key(shop.getTypeId(), dimension)), value.doubleValue(), member);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 按页码查询排行榜
+     *
+     * @param from 起始下标
+     * @param size 数量
+     * @return 店铺id和排序值，按排行顺序
+     */
+    public Set<ZSetOperations.TypedTuple<String>> range(Long typeId, Dimension dimension, long from, int size) {
+        String key = key(typeId, dimension);
+        ZSetOperations<String, String> ops = stringRedisTemplate.opsForZSet();
+        return dimension.desc
+                ? ops.reverseRangeWithScores(key, from, from + size - 1)
+                : ops.rangeWithScores(key, from, from + size - 1);
+    }
+
+    /**
+     * 按游标查询排行榜，与关注推送的滚动分页相同：从上一页最后一个排序值开始，跳过这个值已经返回的数量
+     *
+     * @param last   上一页最后一个排序值，第一页传 null
+     * @param offset 上一页中与 last 相同的数量
+     * @param size   数量
+     * @return 店铺id和排序值，按排行顺序
+     */
+    public Set<ZSetOperations.TypedTuple<String>> scroll(Long typeId, Dimension dimension, Double last, int offset, int size) {
+        String key = key(typeId, dimension);
+        ZSetOperations<String, String> ops = stringRedisTemplate.opsForZSet();
+        if (dimension.desc) {
+            double max = last == null ? Double.POSITIVE_INFINITY : last;
+            return ops.reverseRangeByScoreWithScores(key, Double.NEGATIVE_INFINITY, max, offset, size);
+        }
+        double min = last == null ? Double.NEGATIVE_INFINITY : last;
+        return ops.rangeByScoreWithScores(key, min, Double.POSITIVE_INFINITY, offset, size);
+    }
+
+    /**
+     * 从数据库全量重建所有类型、所有维度的排行榜
+     *
+     * @return 店铺数、key数、耗时、速度，已有重建任务时返回 null
+     */
+    public Map<String, Object> rebuild() {
+        List<String> liveKeys = new ArrayList<>();
+        for (ShopType shopType : shopTypeMapper.selectList(null)) {
+            for (Dimension dimension : Dimension.values()) {
+                liveKeys.add(key(shopType.getId(), dimension));
+            }
+        }
+        return shadowKeyRebuilder.rebuild("rank", REBUILDING_KEY, liveKeys,
+                new String[]{"id", "type_id", "sold", "score", "comments", "avg_price"}, (connection, shops, builtKeys) -> {
+                    for (Shop shop : shops) {
+                        if (shop.getTypeId() == null) {
+                            continue;
+                        }
+                        for (Dimension dimension : Dimension.values()) {
+                            Number value = dimension.getter.apply(shop);
+                            if (value == null) {
+                                continue;
+                            }
+                            String key = key(shop.getTypeId(), dimension);
+                            connection.zAdd(shadowKey(key), value.doubleValue(), shop.getId().toString());
+                            builtKeys.add(key);
+                        }
+                    }
+                });
+    }
+
+    private static String key(Long typeId, Dimension dimension) {
+        return SHOP_RANK_KEY + typeId + ":" + dimension.name;
+    }
+}
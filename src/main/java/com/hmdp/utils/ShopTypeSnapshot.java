@@ -0,0 +1,168 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.ShopType;
+import com.hmdp.mapper.ShopTypeMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 进程内的店铺类型快照：版本号、类型列表和序列化好的响应体，整体替换，读取不加锁。
+ * 类型变化时 bumpVersion 自增 Redis 中的版本号并广播，各节点收到后重新加载；
+ * 广播可能丢失，另外定时比较一次版本号。
+ */
+@Slf4j
+@Component
+public class ShopTypeSnapshot implements MessageListener {
+    @Resource
+    private ShopTypeMapper shopTypeMapper;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ObjectMapper objectMapper;
+
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("shop-type-version-", true));
+    private volatile Snapshot snapshot;
+
+    @PostConstruct
+    private void init() {
+        scheduler.scheduleWithFixedDelay(this::checkVersion,
+                SHOP_TYPE_VERSION_CHECK_SECONDS, SHOP_TYPE_VERSION_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 当前快照，第一次调用时加载
+     */
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = load(currentVersion());
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 店铺类型变化后调用，应在事务提交之后
+     */
+    public void bumpVersion() {
+        Long version = stringRedisTemplate.opsForValue().increment(SHOP_TYPE_VERSION_KEY);
+        stringRedisTemplate.convertAndSend(SHOP_TYPE_VERSION_CHANNEL, String.valueOf(version));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String version = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (StrUtil.isNumeric(version)) {
+            refreshIfNewer(Long.parseLong(version));
+        }
+    }
+
+    private void checkVersion() {
+        try {
+            refreshIfNewer(currentVersion());
+        } catch (Exception e) {
+            log.warn("检查店铺类型版本失败", e);
+        }
+    }
+
+    private synchronized void refreshIfNewer(long version) {
+        // 还没有加载过的节点等第一次访问时再加载
+        if (snapshot != null && version > snapshot.version) {
+            load(version);
+        }
+    }
+
+    private long currentVersion() {
+        String version = stringRedisTemplate.opsForValue().get(SHOP_TYPE_VERSION_KEY);
+        return StrUtil.isNumeric(version) ? Long.parseLong(version) : 0L;
+    }
+
+    private synchronized Snapshot load(long version) {
+        List<ShopType> types = Collections.unmodifiableList(
+                shopTypeMapper.selectList(new QueryWrapper<ShopType>().orderByAsc("sort")));
+        Result result = types.isEmpty() ? Result.fail("未查找到商铺信息") : Result.ok(types);
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("店铺类型序列化失败", e);
+        }
+        // 版本号加内容摘要，版本号没有变化但数据被直接修改时也能区分
+        String etag = "\"" + version + "-" + DigestUtil.md5Hex(body).substring(0, 16) + "\"";
+        Snapshot loaded = new Snapshot(version, types, result, body, etag);
+        snapshot = loaded;
+        log.info("店铺类型快照已加载，版本：{}，类型数：{}", version, types.size());
+        return loaded;
+    }
+
+    public static class Snapshot {
+        private final long version;
+        private final List<ShopType> types;
+        private final Result result;
+        private final byte[] body;
+        private final String etag;
+
+        private Snapshot(long version, List<ShopType> types, Result result, byte[] body, String etag) {
+            this.version = version;
+            this.types = types;
+            this.result = result;
+            this.body = body;
+            this.etag = etag;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<ShopType> getTypes() {
+            return types;
+        }
+
+        public Result getResult() {
+            return result;
+        }
+
+        /**
+         * 序列化好的响应体，不要修改
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
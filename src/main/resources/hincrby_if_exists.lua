@@ -0,0 +1,6 @@
+---只修改已经存在的缓存，缓存不存在时不创建只有一个字段的Hash
+---KEYS[1]：缓存key，ARGV[1]：字段，ARGV[2]：增量
+if (redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], '_null') == 1) then
+    return nil
+end
+return redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2])
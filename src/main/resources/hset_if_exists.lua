@@ -0,0 +1,7 @@
+---只修改已经存在的缓存，缓存不存在时不创建只有一个字段的Hash
+---KEYS[1]：缓存key，ARGV[1]：字段，ARGV[2]：值
+if (redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], '_null') == 1) then
+    return 0
+end
+redis.call('hset', KEYS[1], ARGV[1], ARGV[2])
+return 1
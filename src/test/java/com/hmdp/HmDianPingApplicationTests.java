@@ -1,6 +1,11 @@
 package com.hmdp;
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.Shop;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.service.impl.ShopServiceImpl;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisIdWorker;
@@ -37,6 +42,12 @@ class HmDianPingApplicationTests {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
     private ExecutorService es = Executors.newFixedThreadPool(500);
 
     /**
@@ -106,4 +117,52 @@ class HmDianPingApplicationTests {
     }
 
 
+    /**
+     * 对比秒杀订单逐条写入与每批 10 条批量写入的耗时。
+     * 使用第一张秒杀券和不存在的用户id，先加足库存，结束后删除写入的订单并恢复库存。
+     */
+    @Test
+    void testBatchVoucherOrder() {
+        int total = 1000;
+        int batchSize = 10;
+        SeckillVoucher voucher = seckillVoucherService.list().get(0);
+        Long voucherId = voucher.getVoucherId();
+        seckillVoucherService.update().setSql("stock = stock + " + total * 2).eq("voucher_id", voucherId).update();
+        long userBase = 900_000_000L;
+        try {
+            // 1.逐条写入
+            long begin = System.currentTimeMillis();
+            for (int i = 0; i < total; i++) {
+                voucherOrderService.creatVoucherOrder(newOrder(voucherId, userBase + i));
+            }
+            System.out.println("逐条写入耗时 = " + (System.currentTimeMillis() - begin));
+            // 2.每批 batchSize 条
+            begin = System.currentTimeMillis();
+            List<VoucherOrder> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < total; i++) {
+                batch.add(newOrder(voucherId, userBase + total + i));
+                if (batch.size() == batchSize) {
+                    voucherOrderService.createVoucherOrders(batch);
+                    batch.clear();
+                }
+            }
+            System.out.println("批量写入耗时 = " + (System.currentTimeMillis() - begin));
+        } finally {
+            voucherOrderService.remove(new QueryWrapper<VoucherOrder>()
+                    .eq("voucher_id", voucherId)
+                    .ge("user_id", userBase)
+                    .lt("user_id", userBase + total * 2));
+            seckillVoucherService.update().set("stock", voucher.getStock()).eq("voucher_id", voucherId).update();
+        }
+    }
+
+    private VoucherOrder newOrder(Long voucherId, long userId) {
+        VoucherOrder order = new VoucherOrder();
+        order.setId(redisIdWorker.nextId("order"));
+        order.setUserId(userId);
+        order.setVoucherId(voucherId);
+        return order;
+    }
+
+
 }
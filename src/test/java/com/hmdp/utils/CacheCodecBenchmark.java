@@ -0,0 +1,122 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hmdp.entity.Shop;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存编码的吞吐量对比：hutool JSON（原实现）、Jackson JSON、Smile。
+ * 运行 main 方法，先打印每种编码下一个 Shop 的字节数，再执行 JMH。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CacheCodecBenchmark {
+    private Shop shop;
+    private RedisData redisData;
+    private CacheCodec jackson;
+    private CacheCodec smile;
+    private String hutoolJson;
+    private String hutoolLogicalJson;
+    private byte[] jacksonBytes;
+    private byte[] smileBytes;
+
+    @Setup
+    public void setup() {
+        shop = sampleShop();
+        redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+        jackson = new JacksonCacheCodec(new ObjectMapper()
+                .findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+        smile = new SmileCacheCodec();
+        hutoolJson = JSONUtil.toJsonStr(shop);
+        hutoolLogicalJson = JSONUtil.toJsonStr(redisData);
+        jacksonBytes = jackson.encode(shop);
+        smileBytes = smile.encode(shop);
+    }
+
+    @Benchmark
+    public String hutoolEncode() {
+        return JSONUtil.toJsonStr(shop);
+    }
+
+    @Benchmark
+    public Shop hutoolDecode() {
+        return JSONUtil.toBean(hutoolJson, Shop.class);
+    }
+
+    @Benchmark
+    public Shop hutoolDecodeLogical() {
+        // 原逻辑过期实现：先解析 RedisData，再把 JSONObject 转换为目标类型
+        RedisData data = JSONUtil.toBean(hutoolLogicalJson, RedisData.class);
+        return JSONUtil.toBean((JSONObject) data.getData(), Shop.class);
+    }
+
+    @Benchmark
+    public byte[] jacksonEncode() {
+        return jackson.encode(shop);
+    }
+
+    @Benchmark
+    public Shop jacksonDecode() {
+        return jackson.decode(jacksonBytes, 0, jacksonBytes.length, Shop.class);
+    }
+
+    @Benchmark
+    public byte[] smileEncode() {
+        return smile.encode(shop);
+    }
+
+    @Benchmark
+    public Shop smileDecode() {
+        return smile.decode(smileBytes, 0, smileBytes.length, Shop.class);
+    }
+
+    private static Shop sampleShop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        CacheCodecBenchmark benchmark = new CacheCodecBenchmark();
+        benchmark.setup();
+        System.out.println("hutool bytes per Shop = " + benchmark.hutoolJson.getBytes(StandardCharsets.UTF_8).length);
+        System.out.println("jackson bytes per Shop = " + benchmark.jacksonBytes.length);
+        System.out.println("smile bytes per Shop = " + benchmark.smileBytes.length);
+
+        Options options = new OptionsBuilder()
+                .include(CacheCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
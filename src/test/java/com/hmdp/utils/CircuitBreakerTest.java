@@ -0,0 +1,111 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 熔断器状态转换：关闭 -> 打开 -> 半开 -> 关闭/打开
+ */
+class CircuitBreakerTest {
+    private static final long OPEN_MILLIS = 50L;
+
+    private final CircuitBreaker breaker = new CircuitBreaker("test", 3, OPEN_MILLIS, 1000L);
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        fail(2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // 成功一次后重新计数
+        assertEquals("ok", breaker.execute(() -> "ok"));
+        fail(2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        fail(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitBreakerOpenException.class, () -> breaker.execute(() -> "ok"));
+        assertEquals(1, breaker.getRejectedCount());
+    }
+
+    @Test
+    void closesAfterSuccessfulProbe() throws InterruptedException {
+        fail(3);
+        Thread.sleep(OPEN_MILLIS + 10);
+        assertEquals("ok", breaker.execute(() -> "ok"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void reopensAfterFailedProbe() throws InterruptedException {
+        fail(3);
+        Thread.sleep(OPEN_MILLIS + 10);
+        fail(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        // 重新打开后要再等 openMillis 才能探测
+        assertThrows(CircuitBreakerOpenException.class, () -> breaker.execute(() -> "ok"));
+    }
+
+    @Test
+    void halfOpenAllowsOnlyOneProbe() throws Exception {
+        fail(3);
+        Thread.sleep(OPEN_MILLIS + 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> probe = executor.submit(() -> breaker.execute(() -> {
+                started.countDown();
+                await(release);
+                return "ok";
+            }));
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+            assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+            // 探测调用还没结束，其它调用被拒绝
+            assertThrows(CircuitBreakerOpenException.class, () -> breaker.execute(() -> "ok"));
+            release.countDown();
+            assertEquals("ok", probe.get(1, TimeUnit.SECONDS));
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void slowCallCountsAsFailure() {
+        CircuitBreaker slow = new CircuitBreaker("slow", 1, OPEN_MILLIS, 10L);
+        assertEquals("ok", slow.execute(() -> {
+            sleep(30);
+            return "ok";
+        }));
+        assertEquals(CircuitBreaker.State.OPEN, slow.getState());
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            assertThrows(IllegalStateException.class, () -> breaker.execute(() -> {
+                throw new IllegalStateException("db down");
+            }));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ShopFilterDTO;
+import com.hmdp.entity.Shop;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 100万店铺下的多条件筛选：位图索引与逐个判断条件的全量扫描（相当于数据库按动态 WHERE 全表扫描）对比。
+ * 运行 main 方法执行 JMH。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ShopFilterBenchmark {
+    private static final int SHOPS = 1_000_000;
+    private static final int TYPES = 10;
+    private static final int AREAS = 200;
+    private static final int PAGE_SIZE = 5;
+    private static final double X = 120.149192;
+    private static final double Y = 30.316078;
+
+    private ShopBitmapIndex index;
+    private List<Shop> shops;
+    private Set<Long> voucherShops;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        index = new ShopBitmapIndex();
+        shops = new ArrayList<>(SHOPS);
+        voucherShops = new HashSet<>();
+        for (long id = 1; id <= SHOPS; id++) {
+            Shop shop = new Shop()
+                    .setId(id)
+                    .setTypeId(1L + random.nextInt(TYPES))
+                    .setArea("商圈" + random.nextInt(AREAS))
+                    .setAvgPrice((long) random.nextInt(800))
+                    .setScore(10 + random.nextInt(41))
+                    .setSold(random.nextInt(10000))
+                    .setComments(random.nextInt(5000))
+                    .setX(X + (random.nextDouble() - 0.5) * 0.5)
+                    .setY(Y + (random.nextDouble() - 0.5) * 0.5);
+            shops.add(shop);
+            index.put(shop);
+            if (random.nextInt(5) == 0) {
+                voucherShops.add(id);
+                index.setVoucher(id, true);
+            }
+        }
+    }
+
+    /**
+     * 类型 + 价格档位，按id分页
+     */
+    @Benchmark
+    public List<ShopBitmapIndex.Hit> bitmapTypeAndPrice() {
+        return index.query(new ShopFilterDTO().setTypeId(3L).setPriceBands(Arrays.asList(1, 2)), PAGE_SIZE);
+    }
+
+    /**
+     * 全部条件，按距离排序
+     */
+    @Benchmark
+    public List<ShopBitmapIndex.Hit> bitmapAllByDistance() {
+        return index.query(allFilters().setX(X).setY(Y), PAGE_SIZE);
+    }
+
+    /**
+     * 类型 + 星级 + 优惠券，按销量排序，匹配的店铺较多
+     */
+    @Benchmark
+    public List<ShopBitmapIndex.Hit> bitmapWideBySold() {
+        return index.query(new ShopFilterDTO().setTypeId(3L).setMinStar(3).setHasVoucher(true).setSort("sold"), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Long> scanAllByDistance() {
+        ShopFilterDTO filter = allFilters();
+        PriorityQueue<double[]> heap = new PriorityQueue<>((a, b) -> Double.compare(b[0], a[0]));
+        for (Shop shop : shops) {
+            if (!shop.getTypeId().equals(filter.getTypeId())
+                    || !shop.getArea().equals(filter.getArea())
+                    || shop.getAvgPrice() < 100 || shop.getAvgPrice() >= 200
+                    || shop.getScore() < 40
+                    || !voucherShops.contains(shop.getId())) {
+                continue;
+            }
+            heap.offer(new double[]{GeoGridIndex.distance(X, Y, shop.getX(), shop.getY()), shop.getId()});
+            if (heap.size() > PAGE_SIZE) {
+                heap.poll();
+            }
+        }
+        List<Long> ids = new ArrayList<>(heap.size());
+        for (double[] hit : heap) {
+            ids.add((long) hit[1]);
+        }
+        return ids;
+    }
+
+    @Benchmark
+    public List<Long> scanWideBySold() {
+        PriorityQueue<Shop> heap = new PriorityQueue<>(Comparator.comparingInt(Shop::getSold));
+        for (Shop shop : shops) {
+            if (shop.getTypeId() != 3L || shop.getScore() < 30 || !voucherShops.contains(shop.getId())) {
+                continue;
+            }
+            heap.offer(shop);
+            if (heap.size() > PAGE_SIZE) {
+                heap.poll();
+            }
+        }
+        List<Long> ids = new ArrayList<>(heap.size());
+        for (Shop shop : heap) {
+            ids.add(shop.getId());
+        }
+        return ids;
+    }
+
+    private static ShopFilterDTO allFilters() {
+        return new ShopFilterDTO()
+                .setTypeId(3L)
+                .setArea("商圈7")
+                .setPriceBands(Collections.singletonList(2))
+                .setMinStar(4)
+                .setHasVoucher(true);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ShopFilterBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}